@@ -1,10 +1,25 @@
 import algorithm.AStar;
+import algorithm.AlternativeRoutes;
 import algorithm.CostFunction;
+import algorithm.PartitionedGraph;
+import algorithm.ReverseAStar;
+import algorithm.TimeDependentDijkstra;
+import algorithm.TimeExpandedGraph;
+import algorithm.TripBased;
 import algorithm.graph.Edge;
+import algorithm.graph.FootpathTable;
 import algorithm.graph.Graph;
 import algorithm.graph.GraphBuilder;
+import algorithm.graph.GraphView;
+import algorithm.graph.PatternTimetable;
+import algorithm.graph.StationGraph;
+import algorithm.graph.TransportMode;
 import data.*;
+import utils.Checks;
 import utils.CSVReader;
+import utils.MemoryReport;
+import utils.RoutingHarness;
+import utils.StopNameIndex;
 
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -20,13 +35,20 @@ import java.util.stream.Collectors;
 public class Main {
     private static final String[] AGENCIES = {"STIB", "TEC", "DELIJN", "SNCB"};
     private static final Path BASE_DIR = Paths.get("src", "resources");
+    // cache hors des sources : répertoire temporaire de l'utilisateur
+    private static final Path FOOTPATH_CACHE = Paths.get(System.getProperty("java.io.tmpdir"), "gtfs-footpaths.bin");
+    private static final double DEFAULT_FOOTPATH_RADIUS_METERS = 1000.0;
+    private static final double CANDIDATE_RADIUS_METERS = 500.0;
+
+    private static TimeExpandedGraph timeExpanded;      // voir timeExpanded(Graph)
+    private static PartitionedGraph partitioned;        // voir partitioned(List, double)
 
     public static void main(String[] args) {
         try (Scanner sc = new Scanner(System.in)) {
             System.out.println("Chargement du programme...");
-            // Chargement parallèle des compagnies
+            // Chargement parallèle des compagnies (sans les horaires, lus en flux à la construction)
             long t0 = System.nanoTime();
-            List<Company> companies = loadAllCompaniesParallel();
+            List<Company> companies = loadAllCompaniesParallel(false);
             printCounts(companies);
             long t1 = System.nanoTime();
             System.out.printf("Chargement des compagnies en : %.2f ms%n", (t1 - t0) / 1e6);
@@ -34,27 +56,57 @@ public class Main {
             // Fusion et déduplication des arrêts
             long fusion_t0 = System.nanoTime();
             Map<String, Stop> uniqueStopsById = new HashMap<>();
-            List<StopTime> allStopTimes = new ArrayList<>();
             for (Company c : companies) {
                 c.getStops().forEach(s -> uniqueStopsById.putIfAbsent(s.getStopId(), s));
-                allStopTimes.addAll(c.getStopTimes());
             }
             List<Stop> allStops = new ArrayList<>(uniqueStopsById.values());
             long fusion_t1 = System.nanoTime();
             System.out.printf("Fusion : %.2f ms%n", (fusion_t1 - fusion_t0) / 1e6);
 
-
-            /*debug
-            System.out.println("AllStops :" + allStops.size());
-            System.out.println("AllStopTimes :" + allStopTimes.size());
-            */
-
-            // Construction du graphe
+            // Construction du graphe en flux depuis les stop_times.csv
             long graph_t0 = System.nanoTime();
-            Graph graph = GraphBuilder.buildStaticGraph(allStops, allStopTimes);
+            Graph graph;
+            PatternTimetable.Builder patternRows = new PatternTimetable.Builder();
+            try {
+                graph = GraphBuilder.buildStreaming(allStops, companies, stopTimeFiles(), patternRows);
+            } catch (ExecutionException e) {
+                if (!(e.getCause() instanceof IllegalStateException)) throw e;
+                // fichier non trié par trajet : chargement complet des horaires
+                System.out.println(e.getCause().getMessage() + ", chargement complet des horaires.");
+                companies = loadAllCompaniesParallel(true);
+                List<StopTime> allStopTimes = new ArrayList<>();
+                companies.forEach(c -> allStopTimes.addAll(c.getStopTimes()));
+                patternRows = new PatternTimetable.Builder(); // relevé partiel du flux abandonné
+                graph = GraphBuilder.buildStaticGraph(allStops, allStopTimes, companies, patternRows);
+            }
             long graph_t1 = System.nanoTime();
             System.out.printf("Création graphe : %.2f ms%n", (graph_t1 - graph_t0) / 1e6);
 
+            // Fermeture des marches (--marche <m> : rayon), relue depuis le cache si le réseau n'a pas changé
+            long fp_t0 = System.nanoTime();
+            double radius = readRadius(args);
+            FootpathTable footpaths = FootpathTable.cached(graph, radius, FOOTPATH_CACHE);
+            Graph directWalks = graph;
+            graph = GraphBuilder.withFootpaths(graph, footpaths);
+            System.out.printf("Marches fermées (%.0f m, %d) : %.2f ms%n", radius, footpaths.size(),
+                    (System.nanoTime() - fp_t0) / 1e6);
+
+            // Regroupement des quais en stations (graphe de recherche A*)
+            long st_t0 = System.nanoTime();
+            StationGraph stations = StationGraph.build(graph);
+            System.out.printf("Stations : %d (arrêts : %d) en %.2f ms%n", stations.getGraph().stopCount(),
+                    graph.stopCount(), (System.nanoTime() - st_t0) / 1e6);
+
+            // Horaires en motifs relevés pendant la lecture (en plus des arêtes du graphe), puis correspondances trip-based
+            long tb_t0 = System.nanoTime();
+            PatternTimetable patterns = patternRows.build(graph);
+            patternRows = null;
+            System.out.printf("Motifs : %d (trajets : %d, profils : %d, arêtes horaires : %d)%n",
+                    patterns.patternCount(), patterns.tripCount(), patterns.profileCount(), patterns.hopCount());
+            TripBased tripBased = TripBased.build(graph, patterns);
+            System.out.printf("Correspondances trip-based (%d) : %.2f ms%n",
+                    tripBased.transferCount(), (System.nanoTime() - tb_t0) / 1e6);
+
 
             System.out.printf("Le pré-traitment du programme à duré : %.2f ms%n", (System.nanoTime() - t0)/ 1e6);
 
@@ -64,36 +116,90 @@ public class Main {
             companies.forEach(c -> c.getTrips().forEach(t -> tripById.put(t.tripId(), t)));
             companies.forEach(c -> c.getRoutes().forEach(r -> routeById.put(r.getRouteId(), r)));
 
-            // Index par nom (minuscule)
-            Map<String, List<Stop>> stopsByName = allStops.stream().collect(Collectors.groupingBy(s -> s.getStopName().toLowerCase()));
+            // Index des noms d'arrêts (autocomplétion), importance = nombre de départs
+            StopNameIndex nameIndex = StopNameIndex.build(allStops, graph::departureCount);
+
+            // Rapport mémoire (--memoire) : objets et octets estimés par composant
+            if (Arrays.asList(args).contains("--memoire") || Arrays.asList(args).contains("--memory")) {
+                long mr_t0 = System.nanoTime();
+                MemoryReport report = new MemoryReport();
+                companies.forEach(report::addCompany);
+                report.addGraph("Graphe", graph);
+                report.addGraph("Stations", stations.getGraph());
+                report.addMap("tripById", tripById, 0);
+                report.addMap("routeById", routeById, 0);
+                report.addObject("uniqueStopsById", uniqueStopsById);
+                report.addObject("StopNameIndex", nameIndex);
+                report.addObject("PatternTimetable", patterns);
+                report.addObject("TripBased", tripBased);
+                report.print(System.out);
+                System.out.printf("Rapport mémoire : %.2f ms%n", (System.nanoTime() - mr_t0) / 1e6);
+            }
+
+            // Banc d'essai (--bench [n]) : tous les moteurs contre Dijkstra temps-dépendant, puis fin
+            int bench = Arrays.asList(args).indexOf("--bench");
+            if (bench >= 0) {
+                int count = bench + 1 < args.length && args[bench + 1].matches("\\d+") ? Integer.parseInt(args[bench + 1]) : 200;
+                runBench(graph, directWalks, footpaths.maxSec(), companies, radius, tripBased, count);
+                return;
+            }
+
+            // Vérifications reproductibles (--verifier), puis fin ; code de sortie 1 en cas d'écart
+            if (Arrays.asList(args).contains("--verifier")) {
+                Checks checks = new Checks(System.out);
+                checks.platformTransfers(stations, 5000, 42);
+                checks.stopNames(nameIndex, allStops, graph::departureCount, 2000, 42);
+                checks.footpaths(directWalks, radius);
+                checks.candidates(graph, tripBased, timeExpanded(graph), partitioned(companies, radius),
+                        CANDIDATE_RADIUS_METERS, 1000, 42);
+                List<StopTime> stopTimes = new ArrayList<>();
+                loadAllCompaniesParallel(true).forEach(c -> stopTimes.addAll(c.getStopTimes()));
+                checks.patterns(patterns, graph, stopTimes);
+                if (!checks.passed()) System.exit(1);
+                return;
+            }
 
             // Lecture de la source et target
-            Stop source = readStop(sc, stopsByName, "station de départ");
-            Stop target = readStop(sc, stopsByName, "station d'arrivée");
+            // Arrêts du nom saisi au même endroit : une seule recherche multi-sources / multi-cibles
+            List<Stop> sources = readStops(sc, nameIndex, stations, "station de départ");
+            List<Stop> targets = readStops(sc, nameIndex, stations, "station d'arrivée");
 
-            // Lecture de l'heure de départ
-            LocalTime departure = readDepartureTime(sc);
+            // Partir à une heure donnée, ou arriver avant une heure limite (recherche arrière)
+            System.out.println("Type de requête ?");
+            System.out.println(" 1 = Partir à");
+            System.out.println(" 2 = Arriver avant");
+            boolean arriveBy = sc.nextLine().trim().equals("2");
 
-            System.out.printf("\n→ Itinéraire de %s vers %s à partir de %s%n%n", source.getStopName(), target.getStopName(), departure);
+            // Lecture de l'heure de départ (ou d'arrivée)
+            LocalTime departure = readDepartureTime(sc, arriveBy ? "d'arrivée" : "de départ");
+
+            System.out.printf("\n→ Itinéraire de %s vers %s %s %s%n%n", sources.get(0).getStopName(), targets.get(0).getStopName(),
+                    arriveBy ? "arrivant avant" : "à partir de", departure);
 
             System.out.println("Critère d’optimisation ?");
             System.out.println(" 1 = Temps de parcours");
             System.out.println(" 2 = Minimiser les changements");
             System.out.println(" 3 = Minimiser la marche");
             System.out.println(" 4 = Éviter certains modes");
+            System.out.println(" 5 = Temps de parcours (moteur trip-based)");
+            System.out.println(" 6 = Temps de parcours (graphe espace-temps)");
+            System.out.println(" 7 = Temps de parcours (graphe partitionné par compagnie)");
+            System.out.println(" 8 = Temps de parcours (itinéraires alternatifs)");
             int choix = Integer.parseInt(sc.nextLine().trim());
 
-            Set<String> avoidModes;
-            if (choix == 4) {
+            int avoidMask = 0;
+            while (choix == 4) {
                 System.out.print("Mode(s) à éviter (séparés par des virgules), ou entrée vide : ");
                 System.out.println("(TRAIN, TRAM, BUS, WALK, METRO) ");
-                avoidModes = Arrays.stream(sc.nextLine().split(","))
-                        .map(String::trim)
-                        .filter(s -> !s.isEmpty())
-                        .map(String::toUpperCase)
-                        .collect(Collectors.toSet());
-            } else {
-                avoidModes = Collections.emptySet();
+                try {
+                    avoidMask = TransportMode.maskOf(Arrays.stream(sc.nextLine().split(","))
+                            .map(String::trim)
+                            .filter(s -> !s.isEmpty())
+                            .collect(Collectors.toSet()));
+                    break;
+                } catch (IllegalArgumentException e) {
+                    System.err.println(e.getMessage() + ". Réessayez.");
+                }
             }
 
             CostFunction costFunction;
@@ -105,73 +211,273 @@ public class Main {
                     return base;
                 };
                 case 3 -> costFunction = (e, prev) -> {
-                    if (e.getTripId() == null)
+                    if (e.isWalk())
                         return e.getTravelTimeSec() * 10;
                     return e.getTravelTimeSec();
                 };
-                case 4 -> costFunction = (e, prev) -> {
-                    String mode = e.getTripId() == null
-                            ? "WALK"
-                            : routeById.get(tripById.get(e.getTripId()).routeId()).getType().toUpperCase();
-                    return avoidModes.contains(mode)
-                            ? Integer.MAX_VALUE
-                            : e.getTravelTimeSec();
-                };
                 default -> costFunction = (e, prev) -> e.getTravelTimeSec();
             }
 
 
             System.out.println("Recherche du meilleure itinéraire...");
 
+            // Tous les moteurs partent de tous les arrêts candidats vers tous les arrêts candidats
+            if (choix >= 5 && choix <= 8 && arriveBy) {
+                String engine = switch (choix) {
+                    case 5 -> "Trip-based";
+                    case 6 -> "Espace-temps";
+                    case 7 -> "Partitionné";
+                    default -> "Alternatives";
+                };
+                System.out.printf("%s : départ uniquement, recherche arrière A* à la place.%n", engine);
+            } else if (choix == 7) {
+                // Partitions par compagnie construites une fois, depuis les horaires de chaque compagnie ;
+                // recherche sur les seules partitions utiles
+                PartitionedGraph partitioned = partitioned(companies, radius);
+                long tP = System.nanoTime();
+                PartitionedGraph.Result result = partitioned.route(sources, targets, departure);
+                List<Edge> path = result.path();
+                System.out.printf("Graphe de recherche : %d arrêts sur %d%n", result.searchedStops(), partitioned.stopCount());
+                if (path == null) {
+                    System.out.println("✗ Aucun chemin trouvé.");
+                } else {
+                    printItinerary(path, departure, tripById, routeById);
+                }
+                System.out.printf("Partitionné : %.2f ms%n", (System.nanoTime() - tP) / 1e6);
+                return;
+            } else if (choix == 6) {
+                // Modèle espace-temps construit une fois, puis Dijkstra statique
+                TimeExpandedGraph expanded = timeExpanded(graph);
+                long tE = System.nanoTime();
+                List<Edge> path = expanded.pathTo(sources, targets, departure);
+                if (path == null) {
+                    System.out.println("✗ Aucun chemin trouvé.");
+                } else {
+                    printItinerary(path, departure, tripById, routeById);
+                }
+                System.out.printf("Espace-temps : %.2f ms%n", (System.nanoTime() - tE) / 1e6);
+                return;
+            } else if (choix == 5) {
+                long tT = System.nanoTime();
+                List<Edge> path = tripBased.pathTo(sources, targets, departure);
+                if (path == null) {
+                    System.out.println("✗ Aucun chemin trouvé.");
+                } else {
+                    printItinerary(path, departure, tripById, routeById);
+                }
+                System.out.printf("Trip-based : %.2f ms%n", (System.nanoTime() - tT) / 1e6);
+                return;
+            } else if (choix == 8) {
+                // Itinéraires alternatifs : arbres avant et arrière bornés, nœuds de passage
+                long tV = System.nanoTime();
+                Map<Stop, Integer> access = new HashMap<>();
+                Map<Stop, Integer> egress = new HashMap<>();
+                sources.forEach(s -> access.put(s, 0));
+                targets.forEach(s -> egress.put(s, 0));
+                AlternativeRoutes alternatives = new AlternativeRoutes(stations.getGraph().view(GraphView.ALL_MODES),
+                        access, egress, departure, costFunction);
+                List<List<Edge>> routes = alternatives.routes(3);
+                if (routes.isEmpty()) System.out.println("✗ Aucun chemin trouvé.");
+                for (int r = 0; r < routes.size(); r++) {
+                    List<Edge> path = routes.get(r);
+                    System.out.printf("%nItinéraire %d (arrivée %s)%n", r + 1,
+                            LocalTime.ofSecondOfDay(Math.floorMod(alternatives.arrival(path), 24 * 3600)));
+                    if (path.isEmpty()) continue;
+                    printItinerary(stations.expand(path, path.get(0).getFrom(), path.get(path.size() - 1).getTo()),
+                            departure, tripById, routeById);
+                }
+                System.out.printf("Alternatives : %.2f ms%n", (System.nanoTime() - tV) / 1e6);
+                return;
+            }
+
             // Exécution A* temps-dépendant avec indices
             long tA = System.nanoTime();
-            AStar astar = new AStar(graph, source, target, departure, costFunction);
+            // Les modes évités sont exclus par une vue filtrée du graphe
+            GraphView view = stations.getGraph().view(GraphView.ALL_MODES & ~avoidMask);
+            Map<Stop, Integer> access = new HashMap<>();
+            Map<Stop, Integer> egress = new HashMap<>();
+            sources.forEach(s -> access.put(s, 0));
+            targets.forEach(s -> egress.put(s, 0));
+            List<Edge> path;
+            Stop source, target;
+            if (arriveBy) {
+                // une seule recherche arrière depuis la cible donne le départ au plus tard
+                ReverseAStar reverse = new ReverseAStar(view, access, egress, departure, costFunction);
+                path = reverse.pathTo();
+                source = reverse.reachedSource();
+                target = reverse.reachedTarget();
+                if (path != null) {
+                    departure = reverse.latestDeparture();
+                    System.out.printf("Départ au plus tard : %s%n", departure);
+                }
+            } else {
+                AStar astar = new AStar(view, access, egress, departure, costFunction);
+                path = astar.pathTo();
+                source = astar.reachedSource();
+                target = astar.reachedTarget();
+            }
 
             // Récupération et affichage du chemin
-            List<Edge> path = astar.pathTo();
             if (path == null) {
                 System.out.println("✗ Aucun chemin trouvé.");
             } else {
-                printItinerary(path, departure, tripById, routeById);
+                // détail des quais restitué uniquement pour l'affichage
+                printItinerary(stations.expand(path, source, target), departure, tripById, routeById);
             }
-            System.out.printf("A*       : %.2f ms%n", (System.nanoTime() - tA) / 1e6);
+            System.out.printf("%s : %.2f ms%n", arriveBy ? "A* arrière" : "A*", (System.nanoTime() - tA) / 1e6);
 
         } catch (ExecutionException | InterruptedException e) {
             System.err.println("Erreur durant l'exécution : " + e.getMessage());
         }
     }
 
-    private static Stop readStop(Scanner sc, Map<String, List<Stop>> stopsByName, String prompt) {
-        Stop chosen;
+    /**
+     * @param directWalks graphe avant fermeture des marches, pour la référence
+     * @param maxWalkSec  durée de marche maximale de la fermeture
+     * @param radius      rayon de marche de la fermeture (partitions)
+     */
+    private static void runBench(Graph graph, Graph directWalks, int maxWalkSec, List<Company> companies,
+                                 double radius, TripBased tripBased, int count)
+            throws InterruptedException, ExecutionException {
+        long tB = System.nanoTime();
+        TimeExpandedGraph expanded = timeExpanded(graph);
+        PartitionedGraph partitioned = partitioned(companies, radius);
+        System.out.printf("Préparation du banc : %.2f ms%n", (System.nanoTime() - tB) / 1e6);
+
+        CostFunction travelTime = (e, prev) -> e.getTravelTimeSec();
+        TimeDependentDijkstra[] dijkstra = new TimeDependentDijkstra[1];
+        AStar[] astar = new AStar[1];
+        PartitionedGraph.Result[] part = new PartitionedGraph.Result[1];
+        RoutingHarness harness = new RoutingHarness(graph)
+                // référence sur les marches directes enchaînées, indépendante de la règle « pas deux marches de suite »
+                .add("Dijkstra TD", q -> {
+                    dijkstra[0] = new TimeDependentDijkstra(directWalks, q.source(), q.departure(), q.target(), maxWalkSec);
+                    return dijkstra[0].pathTo(q.target());
+                }, () -> dijkstra[0].settledCount())
+                .add("A*", q -> {
+                    astar[0] = new AStar(graph, q.source(), q.target(), q.departure(), travelTime);
+                    return astar[0].pathTo();
+                }, () -> astar[0].settledCount())
+                .add("Trip-based", q -> tripBased.pathTo(q.source(), q.target(), q.departure()), null)
+                .add("Espace-temps", q -> expanded.pathTo(q.source(), q.target(), q.departure()), expanded::settledCount)
+                .add("Partitionné", q -> (part[0] = partitioned.route(q.source(), q.target(), q.departure())).path(),
+                        () -> part[0].settled());
+
+        List<RoutingHarness.Query> queries = RoutingHarness.generate(graph, count, 42);
+        System.out.printf("Banc d'essai : %d requêtes, vitesse max observée %.1f m/s%n", queries.size(), graph.maxSpeedMps());
+        RoutingHarness.print(harness.run(queries, Math.min(50, count)), System.out);
+    }
+
+    /**
+     * Arrêts candidats pour le nom saisi : ceux de la même station, ou à moins de
+     * {@code CANDIDATE_RADIUS_METERS} l'un de l'autre. Si le nom désigne des lieux
+     * éloignés (même nom dans plusieurs communes), l'utilisateur choisit.
+     */
+    private static List<Stop> readStops(Scanner sc, StopNameIndex nameIndex, StationGraph stations, String prompt) {
         while (true) {
             System.out.printf("Entrez le nom de la %s : ", prompt);
-            String name = sc.nextLine().trim().toLowerCase();
-            List<Stop> list = stopsByName.get(name);
-            if (list == null) {
-                System.err.println("Station introuvable. Réessayez.");
-                continue;
-            } else if (list.size() > 1) {
-                System.out.println("Plusieurs correspondances :");
-                list.forEach(s -> System.out.println(" - " + s.getStopId() + " : " + s.getStopName()));
-                System.out.println("Précisez en saisissant l'ID :");
-                String id = sc.nextLine().trim();
-                chosen = list.stream().filter(s -> s.getStopId().equals(id)).findFirst().orElse(null);
-                if (chosen == null) {
-                    System.err.println("ID invalide.");
-                    continue;
+            String name = sc.nextLine().trim();
+            List<Stop> list = nameIndex.exact(name);
+            if (!list.isEmpty()) {
+                List<List<Stop>> places = groupByPlace(list, stations);
+                List<Stop> chosen = places.size() == 1 ? places.get(0) : choosePlace(sc, places);
+                if (chosen.size() > 1) System.out.printf("%d arrêts correspondants, tous candidats.%n", chosen.size());
+                return chosen;
+            }
+            System.err.println("Station introuvable. Réessayez.");
+            List<StopNameIndex.Suggestion> suggestions = nameIndex.suggest(name, 5);
+            if (!suggestions.isEmpty()) {
+                System.out.println("Vouliez-vous dire :");
+                suggestions.forEach(s -> System.out.println(" - " + s.name()));
+            }
+        }
+    }
+
+    //Regroupe les arrêts de même station ou proches du premier arrêt d'un groupe
+    private static List<List<Stop>> groupByPlace(List<Stop> stops, StationGraph stations) {
+        Graph graph = stations.getGraph();
+        List<List<Stop>> places = new ArrayList<>();
+        for (Stop s : stops) {
+            List<Stop> place = null;
+            for (List<Stop> p : places) {
+                Stop first = p.get(0);
+                if (graph.indexOf(first) == graph.indexOf(s) || graph.haversine(first, s) <= CANDIDATE_RADIUS_METERS) {
+                    place = p;
+                    break;
                 }
-            } else {
-                chosen = list.get(0);
             }
-            break;
+            if (place == null) places.add(place = new ArrayList<>());
+            place.add(s);
+        }
+        return places;
+    }
+
+    private static List<Stop> choosePlace(Scanner sc, List<List<Stop>> places) {
+        System.out.println("Plusieurs lieux portent ce nom :");
+        for (int i = 0; i < places.size(); i++) {
+            Stop first = places.get(i).get(0);
+            System.out.printf(" %d = %s (%s, %.5f, %.5f, %d arrêt(s))%n", i + 1, first.getStopName(),
+                    first.getStopId(), first.getLat(), first.getLon(), places.get(i).size());
+        }
+        while (true) {
+            System.out.print("Choix : ");
+            String str = sc.nextLine().trim();
+            if (str.matches("\\d+")) {
+                int k = Integer.parseInt(str);
+                if (k >= 1 && k <= places.size()) return places.get(k - 1);
+            }
+            System.err.println("Choix invalide. Réessayez.");
+        }
+    }
+
+    //Modèle espace-temps, construit à la première demande puis partagé (menu, banc)
+    private static TimeExpandedGraph timeExpanded(Graph graph) {
+        if (timeExpanded == null) {
+            long teBuild = System.nanoTime();
+            timeExpanded = TimeExpandedGraph.build(graph);
+            System.out.printf("Graphe espace-temps (%d événements, %d arcs) : %.2f ms%n",
+                    timeExpanded.eventCount(), timeExpanded.arcCount(), (System.nanoTime() - teBuild) / 1e6);
+        }
+        return timeExpanded;
+    }
+
+    //Partitions par compagnie et leur recouvrement, construits à la première demande puis partagés
+    private static PartitionedGraph partitioned(List<Company> companies, double radius)
+            throws InterruptedException, ExecutionException {
+        if (partitioned == null) {
+            long ptBuild = System.nanoTime();
+            partitioned = PartitionedGraph.build(companies, stopTimeFiles(), radius);
+            System.out.printf("Partitions : %d, arrêts frontières : %d, arcs de recouvrement : %d en %.2f ms%n",
+                    partitioned.partitionCount(), partitioned.boundaryCount(), partitioned.overlayArcCount(),
+                    (System.nanoTime() - ptBuild) / 1e6);
+        }
+        return partitioned;
+    }
+
+    //Fichiers stop_times.csv des compagnies, dans l'ordre de AGENCIES
+    private static List<Path> stopTimeFiles() {
+        return Arrays.stream(AGENCIES).map(ag -> BASE_DIR.resolve(ag).resolve("stop_times.csv")).toList();
+    }
+
+    //Rayon de --marche <m>, ou rayon par défaut si l'option est absente ou invalide
+    private static double readRadius(String[] args) {
+        int walkArg = Arrays.asList(args).indexOf("--marche");
+        if (walkArg < 0) return DEFAULT_FOOTPATH_RADIUS_METERS;
+        try {
+            double radius = walkArg + 1 < args.length ? Double.parseDouble(args[walkArg + 1]) : -1;
+            if (radius > 0 && Double.isFinite(radius)) return radius;
+        } catch (NumberFormatException ignored) {
+            // valeur invalide : rayon par défaut
         }
-        return chosen;
+        System.err.printf("--marche attend une distance positive en mètres, rayon par défaut : %.0f m%n",
+                DEFAULT_FOOTPATH_RADIUS_METERS);
+        return DEFAULT_FOOTPATH_RADIUS_METERS;
     }
 
-    private static LocalTime readDepartureTime(Scanner sc) {
+    private static LocalTime readDepartureTime(Scanner sc, String label) {
         LocalTime time;
         while (true) {
-            System.out.print("Entrez l'heure de départ (HH:mm[:ss]) : ");
+            System.out.printf("Entrez l'heure %s (HH:mm[:ss]) : ", label);
             String str = sc.nextLine().trim();
             try {
                 time = LocalTime.parse(str);
@@ -183,12 +489,15 @@ public class Main {
         return time;
     }
 
-    private static List<Company> loadAllCompaniesParallel() throws InterruptedException, ExecutionException {
+    private static List<Company> loadAllCompaniesParallel(boolean withStopTimes)
+            throws InterruptedException, ExecutionException {
         int threads = Math.min(AGENCIES.length, Runtime.getRuntime().availableProcessors());
         ExecutorService exec = Executors.newFixedThreadPool(threads);
         List<Future<Company>> futures = new ArrayList<>();
         for (String ag : AGENCIES) {
-            futures.add(exec.submit(() -> CSVReader.loadCompany(BASE_DIR.resolve(ag), ag)));
+            futures.add(exec.submit(() -> withStopTimes
+                    ? CSVReader.loadCompany(BASE_DIR.resolve(ag), ag)
+                    : CSVReader.loadCompanyMetadata(BASE_DIR.resolve(ag), ag)));
         }
         exec.shutdown();
         List<Company> list = new ArrayList<>();
@@ -200,7 +509,7 @@ public class Main {
         companies.forEach(c -> System.out.printf(
                 "[%s] R:%3d T:%3d S:%4d ST:%6d%n",
                 c.getName(), c.getRoutes().size(), c.getTrips().size(),
-                c.getStops().size(), c.getStopTimes().size())
+                c.getStops().size(), c.getStopTimes() == null ? 0 : c.getStopTimes().size())
         );
     }
 
@@ -2,6 +2,8 @@ package algorithm;
 
 import algorithm.graph.Edge;
 import algorithm.graph.Graph;
+import algorithm.graph.GraphView;
+import algorithm.graph.TransportMode;
 import data.Stop;
 
 import java.time.LocalTime;
@@ -9,12 +11,28 @@ import java.util.*;
 
 /**
  * A* : distTo[] = g-score, fScore = g-score + heuristic
+ * <p>
+ * Plusieurs sources et cibles possibles (quais d'un même nom), chacune avec
+ * une marche d'accès ou de sortie : toutes les sources sont semées dans la
+ * même file, et chaque cible atteinte mène à un puits virtuel via sa marche de
+ * sortie. La recherche s'arrête quand le puits est extrait de la file.
+ * Le coût compte l'attente avant chaque départ, pour que les sources semées à
+ * des heures différentes soient comparables.
+ * <p>
+ * Sur un graphe aux marches fermées ({@link Graph#footpathsClosed()}), une
+ * marche n'est jamais suivie d'une autre : chaque nœud a alors deux étiquettes,
+ * atteint à pied ou non, la seconde dominant la première à heure égale.
+ * Sur un graphe de stations, la correspondance dépend du quai d'arrivée : les
+ * étiquettes sont alors tenues par quai ({@link Graph#platformIndexOf(Stop)}).
+ * Elle est comptée avant tout arc partant d'un autre quai (marche comprise),
+ * depuis le quai source et jusqu'au quai cible.
  */
 public class AStar {
     private record State(
-            Stop stop,
+            int node,          // indice de l'arrêt dans le graphe
+            int slot,          // étiquette : quai d'arrivée, atteint à pied ou non
             int timeSec,       // instant actuel en secondes depuis minuit
-            int gCost,         // coût accumulé
+            int gCost,         // coût accumulé, attentes comprises
             int fCost,         // gCost + heuristique
             State parent,      // état précédent
             Edge via           // arc emprunté pour arriver ici
@@ -25,81 +43,290 @@ public class AStar {
         }
     }
 
+    private static final int SINK = -1;
+
     private final Graph graph;
-    private final Stop source;
-    private final Stop target;
+    private final Stop[] sourceStops;
+    private final int[] sourceNodes;
+    private final int[] accessSec;
+    private final Stop[] targetStops;
+    private final int[] targetNodes;
+    private final int[] targetEgressSec;
+    private final Set<Integer> targetNodeSet = new HashSet<>();
+    private final TravelTimeHeuristic heuristic;
     private final int departureSec;
-    private final Map<Stop, List<Edge>> adj;
+    private final GraphView view;
+    private final byte[] modes;
     private final CostFunction costFunction;
+    private final int labels;                 // étiquettes par nœud : 2 si marches fermées
+    private Stop reachedSource;
+    private Stop reachedTarget;
+    private int settledCount;
+    private PriorityQueue<State> open;        // tas de la dernière recherche, repris par growTree
+    private int[] bestTime;                   // meilleure heure par étiquette
+    private Tree tree;                        // arbre tenu pendant la recherche, null sinon
 
     /**
      * Constructeur pour initialiser A*
      */
     public AStar(Graph graph, Stop source, Stop target, LocalTime departure, CostFunction costFunction) {
-        this.graph = graph;
-        this.source = source;
-        this.target = target;
+        this(graph.view(GraphView.ALL_MODES), source, target, departure, costFunction);
+    }
+
+    /**
+     * Constructeur pour initialiser A* sur une vue filtrée : les arcs des modes exclus ne sont jamais parcourus.
+     */
+    public AStar(GraphView view, Stop source, Stop target, LocalTime departure, CostFunction costFunction) {
+        this(view, Map.of(source, 0), Map.of(target, 0), departure, costFunction);
+    }
+
+    /**
+     * Constructeur multi-sources et multi-cibles.
+     *
+     * @param sources arrêts de départ possibles et marche d'accès de chacun (s)
+     * @param targets arrêts d'arrivée possibles et marche de sortie de chacun (s)
+     */
+    public AStar(GraphView view, Map<Stop, Integer> sources, Map<Stop, Integer> targets,
+                 LocalTime departure, CostFunction costFunction) {
+        this.graph = view.getGraph();
+        this.sourceStops = known(graph, sources);
+        this.sourceNodes = new int[sourceStops.length];
+        this.accessSec = new int[sourceStops.length];
+        for (int k = 0; k < sourceStops.length; k++) {
+            sourceNodes[k] = graph.indexOf(sourceStops[k]);
+            accessSec[k] = sources.get(sourceStops[k]);
+        }
+        this.targetStops = known(graph, targets);
+        this.targetNodes = new int[targetStops.length];
+        this.targetEgressSec = new int[targetStops.length];
+        Map<Stop, Integer> goals = new HashMap<>();
+        for (int k = 0; k < targetStops.length; k++) {
+            targetNodes[k] = graph.indexOf(targetStops[k]);
+            targetEgressSec[k] = targets.get(targetStops[k]);
+            goals.put(targetStops[k], targetEgressSec[k]);
+            targetNodeSet.add(targetNodes[k]);
+        }
+        this.heuristic = new TravelTimeHeuristic(graph, goals);
         this.departureSec = departure.toSecondOfDay();
-        this.adj = graph.getAdjacencyMap();
+        this.view = view;
+        this.modes = view.modes();
         this.costFunction = costFunction;
+        this.labels = graph.footpathsClosed() ? 2 : 1;
     }
 
     /**
      * @return liste des arcs empruntés pour arriver à destination.
      */
     public List<Edge> pathTo() {
-        PriorityQueue<State> open = new PriorityQueue<>();
-        Map<Stop, Integer> bestTime = new HashMap<>();
+        return pathTo(false);
+    }
+
+    /**
+     * Comme {@link #pathTo()}, en tenant l'arbre des étiquettes : {@link #growTree}
+     * prolonge ensuite la même recherche (tas et étiquettes) au lieu d'en relancer une.
+     */
+    List<Edge> pathToKeepingTree() {
+        return pathTo(true);
+    }
+
+    private List<Edge> pathTo(boolean keepTree) {
+        if (sourceNodes.length == 0 || targetNodes.length == 0) return null;
+        start(keepTree);
+        State endState = search(false, Integer.MAX_VALUE, Long.MAX_VALUE);
+        if (!keepTree) {
+            open = null;
+            bestTime = null;
+        }
+
+        if (endState == null) return null;
+        LinkedList<Edge> path = new LinkedList<>();
+        State s = endState;
+        for (; s.via != null; s = s.parent)
+            path.addFirst(s.via);
+        reachedSource = graph.getPlatform(s.slot / labels); // étiquette semée : quai source exact
+        reachedTarget = pick(graph, targetStops, targetNodes, targetEgressSec, endState.node,
+                graph.getPlatform(endState.slot / labels));
+        return path;
+    }
+
+    /**
+     * Arbre des arrivées au plus tôt, sans arrêt à la cible : un nœud n'est
+     * développé que si son heure plus l'heuristique respecte {@code deadlineSec}.
+     * Après {@link #pathToKeepingTree()}, la recherche de l'optimal reprend là où
+     * elle s'est arrêtée ; sinon une recherche neuve est lancée.
+     *
+     * @param deadlineSec heure limite d'arrivée à la cible
+     * @param stopNanos   instant ({@link System#nanoTime()}) où la croissance s'interrompt
+     * @return arbre (éventuellement partiel si le délai est dépassé)
+     */
+    Tree growTree(int deadlineSec, long stopNanos) {
+        if (tree == null || open == null) start(true);
+        search(true, deadlineSec, stopNanos);
+        return tree;
+    }
+
+    /**
+     * Arbre par étiquette (voir {@link #slot}) : heure, arc par lequel l'étiquette a été
+     * atteinte et étiquette précédente dans le chemin (arc null et -1 aux racines).
+     * Suivre {@code parent} redonne exactement le chemin de l'étiquette.
+     */
+    record Tree(int labels, int[] timeSec, Edge[] edge, int[] parent) {
+        static Tree empty(Graph graph, int labels, int unreached) {
+            int size = graph.platformCount() * labels;
+            int[] time = new int[size];
+            int[] parent = new int[size];
+            Arrays.fill(time, unreached);
+            Arrays.fill(parent, -1);
+            return new Tree(labels, time, new Edge[size], parent);
+        }
+
+        //Nœud du graphe portant l'étiquette k
+        int node(Graph graph, int k) {
+            return graph.indexOf(graph.getPlatform(k / labels));
+        }
+    }
 
-        State start = new State(source, departureSec, 0, heuristicSec(source), null, null);
-        open.add(start);
-        bestTime.put(source, departureSec);
+    //Sème les sources dans un tas neuf ; keepTree : l'arbre des étiquettes est tenu pendant la recherche
+    private void start(boolean keepTree) {
+        tree = keepTree ? Tree.empty(graph, labels, Integer.MAX_VALUE) : null;
+        bestTime = keepTree ? tree.timeSec() : new int[graph.platformCount() * labels];
+        if (!keepTree) Arrays.fill(bestTime, Integer.MAX_VALUE);
+        open = new PriorityQueue<>();
+        settledCount = 0;
+        for (int k = 0; k < sourceNodes.length; k++) {
+            int node = sourceNodes[k];
+            int key = slot(labels, graph.platformIndexOf(sourceStops[k]), null);
+            int time = departureSec + accessSec[k];
+            if (time < bestTime[key]) {
+                bestTime[key] = time;
+                open.add(new State(node, key, time, accessSec[k], accessSec[k] + heuristic.estimate(node), null, null));
+            }
+        }
+    }
 
-        State endState = null;
+    /**
+     * Boucle commune sur le tas courant : s'arrête au puits si {@code full} est
+     * faux, sinon développe tout l'arbre borné par {@code deadlineSec} et
+     * {@code stopNanos}.
+     */
+    private State search(boolean full, int deadlineSec, long stopNanos) {
+        int polled = 0;
         while (!open.isEmpty()) {
             State cur = open.poll();
-            if (cur.stop.equals(target)) {
-                endState = cur;
-                break;
+            if (cur.node == SINK) {
+                if (full) continue; // puits laissé dans le tas par la recherche de l'optimal
+                return cur.parent;
             }
+            if (full && (++polled & 255) == 0 && System.nanoTime() > stopNanos)
+                break;
+            // tas trié par coût estimé (heure moins départ plus heuristique) : tout le reste est hors délai
+            if (full && (long) departureSec + cur.fCost > deadlineSec)
+                break;
 
-            if (cur.timeSec > bestTime.getOrDefault(cur.stop, Integer.MAX_VALUE))
+            if (cur.timeSec > bestTime[cur.slot])
                 continue;
+            settledCount++;
 
-            for (Edge e : adj.getOrDefault(cur.stop, Collections.emptyList())) {
-                int depart = cur.timeSec;
-                if (e.getTripId() != null) {
-                    int sched = e.getDepartureTimeSec();
-                    if (sched < depart) sched += 24 * 3600;
-                    depart = sched;
-                }
+            // cible atteinte : passage par le puits après la correspondance vers le quai cible et la marche de sortie
+            Stop at = graph.getPlatform(cur.slot / labels);
+            if (!full && targetNodeSet.contains(cur.node)) {
+                int egress = walkVia(graph, targetStops, targetNodes, targetEgressSec, cur.node, at);
+                int g = cur.gCost + egress;
+                open.add(new State(SINK, -1, cur.timeSec + egress, g, g, cur, null));
+            }
 
-                int c = costFunction.cost(e, cur.via);
-                int arrive = depart + c;
+            // marches fermées : une marche n'est jamais suivie d'une autre
+            boolean afterWalk = labels == 2 && cur.via != null && cur.via.isWalk();
+            for (byte m : modes) {
+                if (afterWalk && m == TransportMode.WALK) continue;
+                for (int i = view.firstEdge(cur.node, m), end = view.endEdge(cur.node, m); i < end; i++) {
+                    Edge e = view.getEdge(i);
+                    // correspondance interne depuis le quai courant (stations regroupant plusieurs quais)
+                    int depart = cur.timeSec + graph.transferTimeSec(at, e.getFrom());
+                    if (e.getTripId() != null) {
+                        int sched = e.getDepartureTimeSec();
+                        while (sched < depart) sched += 24 * 3600; // au-delà de 24 h, plusieurs jours possibles
+                        depart = sched;
+                    }
 
-                Stop next = e.getTo();
-                if (arrive < bestTime.getOrDefault(next, Integer.MAX_VALUE)) {
-                    bestTime.put(next, arrive);
-                    int g = cur.gCost + c;
-                    int f = g + heuristicSec(next);
-                    open.add(new State(next, arrive, g, f, cur, e));
+                    int c = costFunction.cost(e, cur.via);
+                    if (c == Integer.MAX_VALUE) continue; // arc interdit par la fonction de coût
+                    int arrive = depart + c;
+
+                    int next = graph.indexOf(e.getTo());
+                    int platform = graph.platformIndexOf(e.getTo());
+                    int key = slot(labels, platform, e);
+                    // l'étiquette « non atteint à pied » domine l'autre à heure égale
+                    if (arrive < bestTime[key] && arrive < bestTime[slot(labels, platform, null)]) {
+                        int h = heuristic.estimate(next);
+                        if (full && (long) arrive + h > deadlineSec) continue; // hors délai même au mieux
+                        bestTime[key] = arrive;
+                        if (tree != null) {
+                            tree.edge()[key] = e;
+                            tree.parent()[key] = cur.slot;
+                        }
+                        int g = cur.gCost + (arrive - cur.timeSec); // coût de l'arc plus l'attente
+                        open.add(new State(next, key, arrive, g, g + h, cur, e));
+                    }
                 }
             }
         }
+        return null;
+    }
 
-        if (endState == null) return null;
-        LinkedList<Edge> path = new LinkedList<>();
-        for (State s = endState; s.via != null; s = s.parent)
-            path.addFirst(s.via);
-        return path;
+    /**
+     * @return source retenue par le dernier {@link #pathTo()} (quai de départ de l'itinéraire)
+     */
+    public Stop reachedSource() {
+        return reachedSource;
     }
 
     /**
-     * Heuristique: distance à vol d'oiseau / vitesse max (en secondes)
+     * @return cible retenue par le dernier {@link #pathTo()} (quai d'arrivée de l'itinéraire)
      */
-    private int heuristicSec(Stop s) {
-        double dist = graph.haversine(s, target);
-        double maxSpeed = 30.0; // m/s
-        return (int) (dist / maxSpeed);
+    public Stop reachedTarget() {
+        return reachedTarget;
+    }
+
+    /**
+     * @return nombre d'états développés lors de la dernière recherche
+     */
+    public int settledCount() {
+        return settledCount;
+    }
+
+    //Étiquette d'un quai atteint par l'arc e : distingue l'arrivée à pied si les marches sont fermées
+    static int slot(int labels, int platform, Edge e) {
+        return labels == 1 ? platform : 2 * platform + (e != null && e.isWalk() ? 1 : 0);
+    }
+
+    //Durée entre le quai at et le meilleur candidat du nœud : correspondance jusqu'au quai candidat
+    //puis sa marche d'accès ou de sortie ; Integer.MAX_VALUE si aucun candidat sur ce nœud
+    static int walkVia(Graph graph, Stop[] stops, int[] nodes, int[] walkSec, int node, Stop at) {
+        int best = Integer.MAX_VALUE;
+        for (int k = 0; k < stops.length; k++) {
+            if (nodes[k] == node) best = Math.min(best, graph.transferTimeSec(at, stops[k]) + walkSec[k]);
+        }
+        return best;
+    }
+
+    //Candidat du nœud réalisant walkVia, le quai at lui-même à égalité
+    static Stop pick(Graph graph, Stop[] stops, int[] nodes, int[] walkSec, int node, Stop at) {
+        Stop best = null;
+        int bestSec = Integer.MAX_VALUE;
+        for (int k = 0; k < stops.length; k++) {
+            if (nodes[k] != node) continue;
+            int sec = graph.transferTimeSec(at, stops[k]) + walkSec[k];
+            if (sec < bestSec || (sec == bestSec && stops[k] == at)) {
+                bestSec = sec;
+                best = stops[k];
+            }
+        }
+        return best;
+    }
+
+    //Arrêts candidats présents dans le graphe
+    static Stop[] known(Graph graph, Map<Stop, Integer> stops) {
+        return stops.keySet().stream().filter(s -> graph.indexOf(s) >= 0).toArray(Stop[]::new);
     }
 }
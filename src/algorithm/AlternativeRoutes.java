@@ -0,0 +1,273 @@
+package algorithm;
+
+import algorithm.graph.Edge;
+import algorithm.graph.Graph;
+import algorithm.graph.GraphView;
+import data.Stop;
+
+import java.time.LocalTime;
+import java.util.*;
+
+/**
+ * Itinéraires alternatifs par nœuds de passage (via-nodes).
+ * <p>
+ * Après l'itinéraire optimal, on fixe une heure limite (départ plus
+ * {@code stretch} fois la durée optimale) et on fait croître deux arbres
+ * bornés par cette heure : arrivées au plus tôt depuis les sources
+ * ({@link AStar}) et départs au plus tard vers les cibles
+ * ({@link ReverseAStar}). L'heuristique élague tout nœud qui ne peut plus
+ * tenir l'heure limite. Les arbres sont tenus par étiquette (quai, arrivée à
+ * pied ou non). Un nœud {@code v} donne un itinéraire s'il porte une étiquette
+ * avant et une étiquette arrière compatibles (correspondance comprise, pas deux
+ * marches de suite) : chemin de l'étiquette avant, puis chemin de l'étiquette
+ * arrière, chacun suivi par ses parents. Un candidat par nœud, le plus court ;
+ * les candidats sont essayés du plus court au plus long ;
+ * un candidat est retenu s'il est sans boucle, tient l'heure limite et ne
+ * partage pas plus de {@code maxShare} de son temps de parcours avec un
+ * itinéraire déjà retenu.
+ * <p>
+ * L'arbre avant prolonge la recherche de l'optimal (même tas, mêmes
+ * étiquettes) ; l'arbre arrière est une recherche à part.
+ * <p>
+ * Le budget de {@code budgetMs} court dès l'appel : au-delà, on rend les
+ * itinéraires déjà trouvés, au moins l'optimal, toujours calculé en entier.
+ */
+public class AlternativeRoutes {
+    private final Graph graph;
+    private final GraphView view;
+    private final Map<Stop, Integer> sources;
+    private final Map<Stop, Integer> targets;
+    private final LocalTime departure;
+    private final CostFunction costFunction;
+    private final Stop[] sourceStops;
+    private final int[] sourceNodes;
+    private final int[] accessSec;
+    private final Stop[] targetStops;
+    private final int[] targetNodes;
+    private final int[] egressSec;
+
+    private double stretch = 1.3;
+    private double maxShare = 0.5;
+    private long budgetMs = 200;
+
+    /**
+     * @param sources arrêts de départ possibles et marche d'accès de chacun (s)
+     * @param targets arrêts d'arrivée possibles et marche de sortie de chacun (s)
+     */
+    public AlternativeRoutes(GraphView view, Map<Stop, Integer> sources, Map<Stop, Integer> targets,
+                             LocalTime departure, CostFunction costFunction) {
+        this.graph = view.getGraph();
+        this.view = view;
+        this.sources = sources;
+        this.targets = targets;
+        this.departure = departure;
+        this.costFunction = costFunction;
+        sourceStops = AStar.known(graph, sources);
+        sourceNodes = new int[sourceStops.length];
+        accessSec = new int[sourceStops.length];
+        for (int k = 0; k < sourceStops.length; k++) {
+            sourceNodes[k] = graph.indexOf(sourceStops[k]);
+            accessSec[k] = sources.get(sourceStops[k]);
+        }
+        targetStops = AStar.known(graph, targets);
+        targetNodes = new int[targetStops.length];
+        egressSec = new int[targetStops.length];
+        for (int k = 0; k < targetStops.length; k++) {
+            targetNodes[k] = graph.indexOf(targetStops[k]);
+            egressSec[k] = targets.get(targetStops[k]);
+        }
+    }
+
+    /**
+     * @param stretch durée maximale d'un itinéraire, relative à l'optimal (> 1)
+     */
+    public AlternativeRoutes withStretch(double stretch) {
+        this.stretch = stretch;
+        return this;
+    }
+
+    /**
+     * @param maxShare part maximale (0 à 1) du temps de parcours commune avec un itinéraire retenu
+     */
+    public AlternativeRoutes withMaxShare(double maxShare) {
+        this.maxShare = maxShare;
+        return this;
+    }
+
+    /**
+     * @param budgetMs temps de calcul maximal, en millisecondes
+     */
+    public AlternativeRoutes withBudget(long budgetMs) {
+        this.budgetMs = budgetMs;
+        return this;
+    }
+
+    /**
+     * @param k nombre maximal d'itinéraires
+     * @return itinéraires (arcs dans l'ordre du trajet), l'optimal en premier ; vide si aucun chemin
+     */
+    public List<List<Edge>> routes(int k) {
+        long stopNanos = System.nanoTime() + budgetMs * 1_000_000L;
+        List<List<Edge>> found = new ArrayList<>();
+        if (k <= 0) return found;
+        AStar forward = new AStar(view, sources, targets, departure, costFunction);
+        List<Edge> best = k == 1 ? forward.pathTo() : forward.pathToKeepingTree();
+        if (best == null) return found;
+        found.add(best);
+        if (best.isEmpty() || k == 1) return found;
+
+        int dep = departure.toSecondOfDay();
+        int optimal = arrival(best) - dep;
+        int deadline = dep + (int) Math.ceil(optimal * stretch);
+
+        AStar.Tree fwd = forward.growTree(deadline, stopNanos);
+        ReverseAStar reverse = new ReverseAStar(view, sources, targets,
+                LocalTime.ofSecondOfDay(Math.floorMod(deadline, 24 * 3600)), costFunction);
+        AStar.Tree bwd = reverse.growTree(deadline, dep, stopNanos);
+
+        // étiquettes regroupées par nœud (tri par dénombrement)
+        int n = graph.stopCount(), size = fwd.timeSec().length;
+        int[] firstLabel = new int[n + 1];
+        for (int q = 0; q < size; q++) firstLabel[fwd.node(graph, q) + 1]++;
+        for (int v = 0; v < n; v++) firstLabel[v + 1] += firstLabel[v];
+        int[] byNode = new int[size];
+        int[] cursor = Arrays.copyOf(firstLabel, n);
+        for (int q = 0; q < size; q++) byNode[cursor[fwd.node(graph, q)]++] = q;
+
+        // candidats : meilleure paire d'étiquettes compatibles par nœud, triés par durée estimée
+        List<long[]> candidates = new ArrayList<>();
+        int[] forwardLabel = new int[n];
+        int[] backwardLabel = new int[n];
+        Arrays.fill(forwardLabel, -1);
+        for (int v = 0; v < n; v++) {
+            long bestCost = Long.MAX_VALUE;
+            for (int i = firstLabel[v]; i < firstLabel[v + 1]; i++) {
+                int qf = byNode[i];
+                if (fwd.edge()[qf] == null) continue; // source ou non atteinte
+                for (int j = firstLabel[v]; j < firstLabel[v + 1]; j++) {
+                    int qb = byNode[j];
+                    if (bwd.edge()[qb] == null || !joinable(fwd, qf, bwd, qb)) continue; // cible ou non atteinte
+                    long cost = (long) (fwd.timeSec()[qf] - dep) + (deadline - bwd.timeSec()[qb]);
+                    if (cost < bestCost) {
+                        bestCost = cost;
+                        forwardLabel[v] = qf;
+                        backwardLabel[v] = qb;
+                    }
+                }
+            }
+            if (bestCost != Long.MAX_VALUE) candidates.add(new long[]{bestCost, v});
+        }
+        candidates.sort(Comparator.comparingLong(c -> c[0]));
+
+        List<Set<Edge>> accepted = new ArrayList<>();
+        accepted.add(Collections.newSetFromMap(new IdentityHashMap<>()));
+        accepted.get(0).addAll(best);
+        boolean[] tried = new boolean[graph.stopCount()];
+        for (long[] c : candidates) {
+            if (found.size() >= k || System.nanoTime() > stopNanos) break;
+            int v = (int) c[1];
+            if (tried[v]) continue;
+            List<Edge> path = concat(fwd, forwardLabel[v], bwd, backwardLabel[v], v);
+            if (path == null) continue;
+            // inutile de réessayer les nœuds du chemin dont la paire d'étiquettes redonne ce même chemin
+            Edge[] arcs = path.toArray(new Edge[0]);
+            for (int i = 1; i < arcs.length; i++) {
+                int u = graph.indexOf(arcs[i - 1].getTo());
+                if (forwardLabel[u] >= 0 && rebuilds(arcs, i, fwd, forwardLabel[u], bwd, backwardLabel[u]))
+                    tried[u] = true;
+            }
+
+            int arrive = arrival(path);
+            if (arrive == Integer.MAX_VALUE || arrive > deadline) continue;
+            if (!diverse(path, accepted)) continue;
+            Set<Edge> edges = Collections.newSetFromMap(new IdentityHashMap<>());
+            edges.addAll(path);
+            accepted.add(edges);
+            found.add(path);
+        }
+        return found;
+    }
+
+    /**
+     * @param path itinéraire rendu par {@link #routes(int)}
+     * @return heure d'arrivée à la cible en secondes, marches d'accès et de sortie et correspondances
+     * aux quais source et cible comprises, selon les règles d'{@link AStar} ;
+     * {@code Integer.MAX_VALUE} si un arc est interdit
+     */
+    public int arrival(List<Edge> path) {
+        int time = departure.toSecondOfDay();
+        if (path.isEmpty()) return time;
+        Stop at = path.get(0).getFrom();
+        int access = AStar.walkVia(graph, sourceStops, sourceNodes, accessSec, graph.indexOf(at), at);
+        if (access == Integer.MAX_VALUE) return Integer.MAX_VALUE;
+        time += access;
+        Edge prev = null;
+        for (Edge e : path) {
+            time += graph.transferTimeSec(at, e.getFrom());
+            if (e.getTripId() != null) {
+                int sched = e.getDepartureTimeSec();
+                while (sched < time) sched += 24 * 3600;
+                time = sched;
+            }
+            int c = costFunction.cost(e, prev);
+            if (c == Integer.MAX_VALUE) return Integer.MAX_VALUE;
+            time += c;
+            prev = e;
+            at = e.getTo();
+        }
+        int egress = AStar.walkVia(graph, targetStops, targetNodes, egressSec, graph.indexOf(at), at);
+        return egress == Integer.MAX_VALUE ? Integer.MAX_VALUE : time + egress;
+    }
+
+    //Vrai si l'on peut repartir par l'étiquette arrière qb après être arrivé par l'étiquette avant qf
+    private boolean joinable(AStar.Tree fwd, int qf, AStar.Tree bwd, int qb) {
+        Edge in = fwd.edge()[qf], out = bwd.edge()[qb];
+        if (graph.footpathsClosed() && in.isWalk() && out.isWalk()) return false;
+        long ready = fwd.timeSec()[qf] + (long) graph.transferTimeSec(in.getTo(), out.getFrom());
+        return ready <= bwd.timeSec()[qb];
+    }
+
+    //Chemin de l'étiquette avant qf jusqu'à v puis de l'étiquette arrière qb ; null s'il repasse par un nœud
+    private List<Edge> concat(AStar.Tree fwd, int qf, AStar.Tree bwd, int qb, int v) {
+        LinkedList<Edge> path = new LinkedList<>();
+        Set<Integer> seen = new HashSet<>();
+        seen.add(v);
+        for (int q = qf; q >= 0 && fwd.edge()[q] != null; q = fwd.parent()[q]) {
+            Edge e = fwd.edge()[q];
+            path.addFirst(e);
+            if (!seen.add(graph.indexOf(e.getFrom()))) return null;
+        }
+        for (int q = qb; q >= 0 && bwd.edge()[q] != null; q = bwd.parent()[q]) {
+            Edge e = bwd.edge()[q];
+            path.addLast(e);
+            if (!seen.add(graph.indexOf(e.getTo()))) return null;
+        }
+        return path;
+    }
+
+    //Vrai si les étiquettes qf et qb redonnent exactement le chemin, coupé après ses i premiers arcs
+    private static boolean rebuilds(Edge[] path, int i, AStar.Tree fwd, int qf, AStar.Tree bwd, int qb) {
+        int k = i;
+        for (int q = qf; q >= 0 && fwd.edge()[q] != null; q = fwd.parent()[q]) {
+            if (k == 0 || fwd.edge()[q] != path[--k]) return false;
+        }
+        if (k != 0) return false;
+        k = i;
+        for (int q = qb; q >= 0 && bwd.edge()[q] != null; q = bwd.parent()[q]) {
+            if (k == path.length || bwd.edge()[q] != path[k++]) return false;
+        }
+        return k == path.length;
+    }
+
+    //Vrai si le chemin partage au plus maxShare de son temps de parcours avec chaque itinéraire retenu
+    private boolean diverse(List<Edge> path, List<Set<Edge>> accepted) {
+        long total = 0;
+        for (Edge e : path) total += e.getTravelTimeSec();
+        for (Set<Edge> other : accepted) {
+            long shared = 0;
+            for (Edge e : path) if (other.contains(e)) shared += e.getTravelTimeSec();
+            if (shared > maxShare * total) return false;
+        }
+        return true;
+    }
+}
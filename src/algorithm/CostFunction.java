@@ -5,6 +5,8 @@ import algorithm.graph.Edge;
 /**
  * Interface pour calculer le coût d'un arc,
  * en fonction de l'arc courant et de l'arc précédent pour gérer les changements.
+ * Les attributs précalculés de l'arc ({@link Edge#getMode()}, {@link Edge#getRouteIndex()},
+ * {@link Edge#getAgencyIndex()}, {@link Edge#isWalk()}) évitent toute recherche dans des tables.
  */
 @FunctionalInterface
 public interface CostFunction {
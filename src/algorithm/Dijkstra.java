@@ -1,85 +1,128 @@
 package algorithm;
 
-import algorithm.graph.Edge;
-import algorithm.graph.Graph;
-import data.Stop;
+import java.util.Arrays;
+import java.util.function.IntPredicate;
 
-import java.util.*;
-/*
 /**
- * Calcule les plus courts chemins (en temps) depuis une source dans un graphe statique.
-
+ * Calcule les plus courts chemins (en temps) depuis une ou plusieurs sources dans un graphe statique.
+ * <p>
+ * Le graphe est donné en tableaux primitifs (CSR) : les arcs du nœud {@code v}
+ * sont les positions {@code [offset[v], offset[v + 1])} de {@code head} et
+ * {@code weight}. La file de priorité est un tas binaire de {@code long}
+ * (distance dans les 32 bits de poids fort, nœud dans les autres), sans objet par entrée.
+ */
 public class Dijkstra {
-    private final Map<Stop, Integer> distTo = new HashMap<>();
-    private final Map<Stop, Edge> edgeTo = new HashMap<>();
-    /*
-    public Dijkstra(Graph G, Stop source) {
-        // 1) Initialisation
-        for (Stop v : G.getStops()) {
-            distTo.put(v, Integer.MAX_VALUE);
-        }
-        distTo.put(source, 0);
+    private final int[] offset;
+    private final int[] head;
+    private final int[] weight;
+    private final int[] distTo;
+    private final int[] arcTo;      // arc par lequel le nœud a été atteint, -1 pour une source
+    private long[] heap = new long[64];
+    private int heapSize;
+    private int settledCount;
 
-        // 2) File de priorité (min-heap sur dist)
-        PriorityQueue<Node> pq = new PriorityQueue<>();
-        pq.add(new Node(source, 0));
+    /**
+     * @param offset début des arcs de chaque nœud, plus la fin du tableau
+     * @param head   nœud d'arrivée de chaque arc
+     * @param weight poids (positif) de chaque arc
+     */
+    public Dijkstra(int[] offset, int[] head, int[] weight) {
+        this.offset = offset;
+        this.head = head;
+        this.weight = weight;
+        this.distTo = new int[offset.length - 1];
+        this.arcTo = new int[offset.length - 1];
+    }
 
-        // 3) Boucle principale
-        while (!pq.isEmpty()) {
-            Node n = pq.poll();
-            Stop v = n.stop;
+    /**
+     * Lance la recherche ; s'arrête au premier nœud cible extrait de la file.
+     *
+     * @param sources  nœuds de départ
+     * @param initDist distance initiale de chaque source
+     * @param count    nombre de sources lues
+     * @param isTarget nœuds cibles
+     * @return premier nœud cible atteint, -1 si aucun
+     */
+    public int run(int[] sources, int[] initDist, int count, IntPredicate isTarget) {
+        Arrays.fill(distTo, Integer.MAX_VALUE);
+        Arrays.fill(arcTo, -1);
+        heapSize = 0;
+        settledCount = 0;
+        for (int k = 0; k < count; k++) {
+            if (initDist[k] < distTo[sources[k]]) {
+                distTo[sources[k]] = initDist[k];
+                push(initDist[k], sources[k]);
+            }
+        }
+        while (heapSize > 0) {
+            long top = pop();
+            int d = (int) (top >>> 32);
+            int v = (int) top;
             // on ignore les entrées obsolètes
-            if (n.dist > distTo.get(v)) continue;
+            if (d > distTo[v]) continue;
+            settledCount++;
+            if (isTarget.test(v)) return v;
             // relaxer toutes les arêtes sortantes
-            for (Edge e : G.getOutgoing(v)) {
-                relax(e, pq);
+            for (int a = offset[v]; a < offset[v + 1]; a++) {
+                int w = head[a];
+                int dw = d + weight[a];
+                if (dw < distTo[w]) {
+                    distTo[w] = dw;
+                    arcTo[w] = a;
+                    push(dw, w);
+                }
             }
         }
+        return -1;
     }
 
-    private void relax(Edge e, PriorityQueue<Node> pq) {
-        Stop v = e.getFrom();
-        Stop w = e.getTo();
-        int weight = e.getTravelTimeSeconds();
-        int dv = distTo.get(v);
-        int dw = distTo.get(w);
-        if (dv + weight < dw) {
-            distTo.put(w, dv + weight);
-            edgeTo.put(w, e);
-            pq.add(new Node(w, dv + weight));
-
+    /**
+     * @return distance du nœud, {@code Integer.MAX_VALUE} s'il n'est pas atteint
+     */
+    public int distTo(int v) {
+        return distTo[v];
     }
 
-    public int distTo(Stop v) {
-        return distTo.getOrDefault(v, Integer.MAX_VALUE);
+    /**
+     * @return arc par lequel le nœud a été atteint, -1 pour une source ou un nœud non atteint
+     */
+    public int arcTo(int v) {
+        return arcTo[v];
     }
 
-    public boolean hasPathTo(Stop v) {
-        return distTo(v) < Integer.MAX_VALUE;
+    /**
+     * @return nombre de nœuds extraits lors de la dernière recherche
+     */
+    public int settledCount() {
+        return settledCount;
     }
 
-    public List<Edge> pathTo(Stop v) {
-        if (!hasPathTo(v)) return null;
-        LinkedList<Edge> path = new LinkedList<>();
-        for (Edge e = edgeTo.get(v); e != null; e = edgeTo.get(e.getFrom())) {
-            path.addFirst(e);
+    private void push(int dist, int node) {
+        if (heapSize == heap.length) heap = Arrays.copyOf(heap, heapSize * 2);
+        long x = ((long) dist << 32) | (node & 0xffffffffL);
+        int i = heapSize++;
+        while (i > 0) {
+            int p = (i - 1) >>> 1;
+            if (heap[p] <= x) break;
+            heap[i] = heap[p];
+            i = p;
         }
-        return path;
+        heap[i] = x;
     }
 
-    // wrapper pour le priority queue
-    private static class Node implements Comparable<Node> {
-        private final Stop stop;
-        private final int dist;
-
-        public Node(Stop stop, int dist) {
-            this.stop = stop;
-            this.dist = dist;
-        }
-
-        @Override
-        public int compareTo(Node o) {
-            return Integer.compare(this.dist, o.dist);
+    private long pop() {
+        long top = heap[0];
+        long x = heap[--heapSize];
+        int i = 0;
+        while (true) {
+            int c = 2 * i + 1;
+            if (c >= heapSize) break;
+            if (c + 1 < heapSize && heap[c + 1] < heap[c]) c++;
+            if (heap[c] >= x) break;
+            heap[i] = heap[c];
+            i = c;
         }
+        heap[i] = x;
+        return top;
     }
-}*/
+}
@@ -0,0 +1,533 @@
+package algorithm;
+
+import algorithm.graph.Edge;
+import algorithm.graph.FootpathTable;
+import algorithm.graph.Graph;
+import algorithm.graph.GraphBuilder;
+import algorithm.graph.GraphView;
+import algorithm.graph.TransportMode;
+import data.Company;
+import data.Stop;
+
+import java.nio.file.Path;
+import java.time.LocalTime;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.stream.IntStream;
+
+/**
+ * Réseau découpé en partitions (une par compagnie), chacune étant un
+ * {@link Graph} indépendant, plus un graphe de recouvrement entre arrêts frontières.
+ * <p>
+ * Un arrêt frontière est l'extrémité d'un arc reliant deux partitions (marche
+ * entre compagnies, gare partagée). Le recouvrement contient ces arcs et, pour
+ * chaque partition, une table des durées minimales entre ses arrêts frontières
+ * (temps de parcours sans attente, donc des minorants). Une requête calcule sur
+ * ce petit graphe un couloir de partitions utiles, puis cherche sur la fusion
+ * des seules partitions retenues. Les dernières fusions sont gardées en cache
+ * ({@value #MERGED_CACHE_SIZE} au plus) : chacune référence de nouveau les arcs
+ * de ses partitions.
+ * <p>
+ * Le couloir à {@code slack} fois le minorant n'est qu'un premier essai :
+ * l'attente n'étant pas comptée, le meilleur itinéraire peut en sortir.
+ * {@link #pathTo} élargit donc le couloir à toutes les partitions dont le
+ * minorant ne dépasse pas la durée trouvée, et recommence tant qu'il grandit ;
+ * le résultat est alors celui de la recherche sur le réseau complet.
+ * <p>
+ * Les partitions sont construites à partir des horaires de chaque compagnie,
+ * lus un fichier à la fois, sans graphe complet du réseau ; seules les marches
+ * sont fermées sur l'ensemble des arrêts (géométrie, sans horaires).
+ * <p>
+ * Le recouvrement est calculé une fois à la construction et rangé en CSR
+ * (tableaux d'entiers) : à construire une seule fois puis partager entre
+ * requêtes, y compris depuis plusieurs threads.
+ */
+public final class PartitionedGraph {
+    private static final double DEFAULT_SLACK = 1.5;
+    private static final int INF = Integer.MAX_VALUE;
+    private static final int MERGED_CACHE_SIZE = 4;
+
+    /**
+     * Résultat d'une requête.
+     *
+     * @param path          arcs empruntés, null si aucun chemin
+     * @param settled       états développés par A*, toutes passes confondues
+     * @param searchedStops nombre d'arrêts du graphe de la dernière passe
+     */
+    public record Result(List<Edge> path, int settled, int searchedStops) {}
+
+    private final String[] names;
+    private final Graph[] partitions;
+    private final StaticGraph[] forward;          // durées minimales par partition
+    private final StaticGraph[] backward;
+    private final Map<Stop, Integer> partitionOf;
+    private final List<Edge> crossEdges;
+    private final Stop[] boundary;                // nœuds du recouvrement
+    private final int[] boundaryPartition;
+    private final Map<Stop, Integer> boundaryIndex;
+    private final StaticGraph overlay;
+    private final StaticGraph overlayReverse;
+    private final Map<Integer, Graph> merged = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, Graph> eldest) {
+            return size() > MERGED_CACHE_SIZE;
+        }
+    };
+
+    private PartitionedGraph(String[] names, Graph[] partitions, Map<Stop, Integer> partitionOf,
+                             List<Edge> crossEdges) {
+        this.names = names;
+        this.partitions = partitions;
+        this.partitionOf = partitionOf;
+        this.crossEdges = crossEdges;
+        int p = partitions.length;
+        forward = new StaticGraph[p];
+        backward = new StaticGraph[p];
+        for (int i = 0; i < p; i++) {
+            forward[i] = StaticGraph.of(partitions[i], false);
+            backward[i] = StaticGraph.of(partitions[i], true);
+        }
+
+        // Arrêts frontières : extrémités des arcs entre partitions
+        boundaryIndex = new LinkedHashMap<>();
+        for (Edge e : crossEdges) {
+            boundaryIndex.putIfAbsent(e.getFrom(), boundaryIndex.size());
+            boundaryIndex.putIfAbsent(e.getTo(), boundaryIndex.size());
+        }
+        boundary = boundaryIndex.keySet().toArray(new Stop[0]);
+        int b = boundary.length;
+        boundaryPartition = new int[b];
+        List<List<Integer>> byPartition = new ArrayList<>();
+        for (int i = 0; i < p; i++) byPartition.add(new ArrayList<>());
+        for (int i = 0; i < b; i++) {
+            boundaryPartition[i] = partitionOf.get(boundary[i]);
+            byPartition.get(boundaryPartition[i]).add(i);
+        }
+
+        // Tables des durées minimales entre frontières d'une même partition (en parallèle) :
+        // une ligne de paires (frontière, durée) par frontière de départ
+        int[][] rows = new int[b][];
+        IntStream.range(0, b).parallel().forEach(i -> {
+            int part = boundaryPartition[i];
+            Graph g = partitions[part];
+            Dijkstra d = forward[part].dijkstra();
+            d.run(new int[]{g.indexOf(boundary[i])}, new int[]{0}, 1, x -> false);
+            List<Integer> same = byPartition.get(part);
+            int[] row = new int[2 * same.size()];
+            int k = 0;
+            for (int j : same) {
+                int dist = d.distTo(g.indexOf(boundary[j]));
+                if (j == i || dist == INF) continue;
+                row[k++] = j;
+                row[k++] = dist;
+            }
+            rows[i] = Arrays.copyOf(row, k);
+        });
+        int tableArcs = 0;
+        for (int[] row : rows) tableArcs += row.length / 2;
+        Arcs arcs = new Arcs(tableArcs + crossEdges.size());
+        for (int i = 0; i < b; i++) {
+            for (int k = 0; k < rows[i].length; k += 2) arcs.add(i, rows[i][k], rows[i][k + 1]);
+        }
+        // arcs entre partitions (doublons inoffensifs pour Dijkstra)
+        for (Edge e : crossEdges) {
+            arcs.add(boundaryIndex.get(e.getFrom()), boundaryIndex.get(e.getTo()), e.getTravelTimeSec());
+        }
+        overlay = StaticGraph.of(b, arcs, false);
+        overlayReverse = StaticGraph.of(b, arcs, true);
+    }
+
+    /**
+     * Construit une partition par compagnie à partir de ses propres horaires.
+     * Un arrêt appartient à la première compagnie qui le déclare ; un arc
+     * horaire dont une extrémité appartient à une autre compagnie relie deux
+     * partitions. Les marches sont la fermeture à {@code footpathRadiusMeters}
+     * sur tous les arrêts, comme {@link GraphBuilder#withFootpaths}.
+     *
+     * @param companies     compagnies, avec leurs stopTimes si déjà chargés (sinon lus en flux)
+     * @param stopTimeFiles fichier stop_times.csv de chaque compagnie, dans le même ordre
+     * @param footpathRadiusMeters rayon de marche de la fermeture
+     * @return graphe partitionné
+     * @throws ExecutionException si un fichier est illisible, référence un arrêt
+     *                            que sa compagnie ne déclare pas, ou n'est pas trié par trip_id
+     */
+    public static PartitionedGraph build(List<Company> companies, List<Path> stopTimeFiles,
+                                         double footpathRadiusMeters)
+            throws InterruptedException, ExecutionException {
+        int p = companies.size();
+        if (stopTimeFiles.size() != p) throw new IllegalArgumentException("Un fichier stop_times par compagnie");
+        Map<String, Stop> canonical = new LinkedHashMap<>();
+        Map<Stop, Integer> partitionOf = new HashMap<>();
+        for (int i = 0; i < p; i++) {
+            for (Stop s : companies.get(i).getStops()) {
+                if (canonical.putIfAbsent(s.getStopId(), s) == null) partitionOf.put(s, i);
+            }
+        }
+        List<List<Stop>> stops = new ArrayList<>();
+        List<List<Edge>> edges = new ArrayList<>();
+        for (int i = 0; i < p; i++) {
+            stops.add(new ArrayList<>());
+            edges.add(new ArrayList<>());
+        }
+        for (Stop s : canonical.values()) stops.get(partitionOf.get(s)).add(s);
+        List<Edge> crossEdges = new ArrayList<>();
+
+        // Marches fermées sur tous les arrêts : graphe de marche seul, sans horaires
+        Graph walks = GraphBuilder.buildStaticGraph(new ArrayList<>(canonical.values()), List.of());
+        FootpathTable table = FootpathTable.compute(walks, footpathRadiusMeters);
+        for (int s = 0; s < walks.stopCount(); s++) {
+            for (int k = table.first(s); k < table.end(s); k++)
+                classify(new Edge(walks.getStop(s), walks.getStop(table.to(k)), table.sec(k)),
+                        partitionOf, edges, crossEdges);
+        }
+
+        // Horaires compagnie par compagnie, sur les seuls arrêts qu'elle déclare
+        Graph routeTable = null;
+        for (int i = 0; i < p; i++) {
+            Company c = companies.get(i);
+            List<Stop> declared = c.getStops().stream().map(s -> canonical.get(s.getStopId())).distinct().toList();
+            Graph timetable = c.getStopTimes() != null
+                    ? GraphBuilder.buildStaticGraph(declared, c.getStopTimes(), companies)
+                    : GraphBuilder.buildStreaming(declared, companies, List.of(stopTimeFiles.get(i)));
+            for (int s = 0; s < timetable.stopCount(); s++) {
+                for (int k = timetable.endEdge(s, TransportMode.WALK); k < timetable.endEdge(s); k++)
+                    classify(timetable.getEdge(k), partitionOf, edges, crossEdges);
+            }
+            if (routeTable == null) routeTable = timetable; // même table des lignes pour toutes (compagnies complètes)
+        }
+
+        String[] names = new String[p];
+        Graph[] partitions = new Graph[p];
+        for (int i = 0; i < p; i++) {
+            names[i] = companies.get(i).getName();
+            partitions[i] = GraphBuilder.subgraph(routeTable, stops.get(i), edges.get(i), true);
+        }
+        return new PartitionedGraph(names, partitions, partitionOf, crossEdges);
+    }
+
+    //Arc interne à une partition, ou arc entre partitions
+    private static void classify(Edge e, Map<Stop, Integer> partitionOf, List<List<Edge>> edges,
+                                 List<Edge> crossEdges) {
+        int a = partitionOf.get(e.getFrom()), b = partitionOf.get(e.getTo());
+        if (a == b) edges.get(a).add(e);
+        else crossEdges.add(e);
+    }
+
+    /**
+     * @return nombre d'arrêts, toutes partitions confondues
+     */
+    public int stopCount() {
+        int n = 0;
+        for (Graph g : partitions) n += g.stopCount();
+        return n;
+    }
+
+    /**
+     * @return nombre de partitions
+     */
+    public int partitionCount() {
+        return partitions.length;
+    }
+
+    /**
+     * @param p partition
+     * @return nom de la partition (compagnie)
+     */
+    public String name(int p) {
+        return names[p];
+    }
+
+    /**
+     * @param p partition
+     * @return graphe de la partition, indépendant des autres
+     */
+    public Graph partition(int p) {
+        return partitions[p];
+    }
+
+    /**
+     * @return nombre d'arrêts frontières (nœuds du recouvrement)
+     */
+    public int boundaryCount() {
+        return boundary.length;
+    }
+
+    /**
+     * @return nombre d'arcs du recouvrement (tables et arcs entre partitions)
+     */
+    public int overlayArcCount() {
+        return overlay.head.length;
+    }
+
+    /**
+     * Partitions utiles à une requête : celles de la source et de la cible, et
+     * celles dont un arrêt frontière est sur un chemin du recouvrement au plus
+     * {@code slack} fois plus long que le minorant le plus court.
+     *
+     * @return masque des partitions (bit p pour la partition p)
+     */
+    public int partitionMask(Stop source, Stop target, double slack) {
+        Corridor c = corridor(source, target);
+        if (c == null) return 0;
+        return c.mask((long) (c.best * slack));
+    }
+
+    /**
+     * Graphe réduit aux partitions utiles à la requête (écart toléré par défaut : 1,5).
+     * Heuristique : voir {@link #pathTo} pour un résultat exact.
+     *
+     * @return fusion des partitions retenues et des arcs qui les relient
+     */
+    public Graph graphFor(Stop source, Stop target) {
+        return merge(partitionMask(source, target, DEFAULT_SLACK));
+    }
+
+    /**
+     * Arrivée au plus tôt par {@link AStar} (coût : temps de parcours) sur le
+     * couloir de partitions, élargi jusqu'à ce qu'aucune partition hors couloir
+     * ne puisse offrir mieux. Sans chemin, le couloir finit par couvrir toutes
+     * les partitions reliées à la source et à la cible : « aucun chemin » est sûr.
+     *
+     * @return itinéraire et compteurs de la requête
+     */
+    public Result route(Stop source, Stop target, LocalTime departure) {
+        return route(List.of(source), List.of(target), departure);
+    }
+
+    /**
+     * Comme {@link #route(Stop, Stop, LocalTime)}, depuis le meilleur des arrêts
+     * de départ vers le meilleur des arrêts d'arrivée (arrêts d'un même lieu,
+     * sans marche d'accès ni de sortie) : le couloir réunit ceux de chaque couple.
+     *
+     * @return itinéraire et compteurs de la requête
+     */
+    public Result route(Collection<Stop> sources, Collection<Stop> targets, LocalTime departure) {
+        List<Corridor> corridors = new ArrayList<>();
+        Map<Stop, Integer> access = new HashMap<>(), egress = new HashMap<>();
+        for (Stop source : sources) {
+            for (Stop target : targets) {
+                Corridor c = corridor(source, target);
+                if (c == null) continue;
+                corridors.add(c);
+                access.put(source, 0);
+                egress.put(target, 0);
+            }
+        }
+        if (corridors.isEmpty()) return new Result(null, 0, 0);
+        int mask = 0;
+        for (Corridor c : corridors) mask |= c.mask((long) (c.best * DEFAULT_SLACK));
+        CostFunction travelTime = (e, prev) -> e.getTravelTimeSec();
+        int settled = 0;
+        while (true) {
+            Graph g = merge(mask);
+            AStar astar = new AStar(g.view(GraphView.ALL_MODES), access, egress, departure, travelTime);
+            List<Edge> path = astar.pathTo();
+            settled += astar.settledCount();
+            // un meilleur itinéraire passerait par des frontières de minorant au plus la durée trouvée
+            long limit = path == null ? INF : arrival(g, path, astar.reachedSource(), astar.reachedTarget(),
+                    departure.toSecondOfDay()) - departure.toSecondOfDay();
+            int wider = mask;
+            for (Corridor c : corridors) wider |= c.mask(limit);
+            if (wider == mask) return new Result(path, settled, g.stopCount());
+            mask = wider;
+        }
+    }
+
+    /**
+     * Itinéraire seul de {@link #route}.
+     *
+     * @return arcs empruntés, null si aucun chemin
+     */
+    public List<Edge> pathTo(Stop source, Stop target, LocalTime departure) {
+        return route(source, target, departure).path();
+    }
+
+    /**
+     * @param mask masque de partitions
+     * @return fusion des partitions du masque, partagée entre requêtes tant qu'elle reste en cache
+     */
+    public Graph merge(int mask) {
+        if (Integer.bitCount(mask) == 1) return partitions[Integer.numberOfTrailingZeros(mask)];
+        synchronized (merged) {
+            return merged.computeIfAbsent(mask, this::mergeUncached);
+        }
+    }
+
+    private Graph mergeUncached(int m) {
+        List<Stop> stops = new ArrayList<>();
+        List<Edge> edges = new ArrayList<>();
+        for (int p = 0; p < partitions.length; p++) {
+            if ((m & (1 << p)) == 0) continue;
+            Graph g = partitions[p];
+            for (int s = 0; s < g.stopCount(); s++) stops.add(g.getStop(s));
+            for (int i = 0; i < g.edgeCount(); i++) edges.add(g.getEdge(i));
+        }
+        for (Edge e : crossEdges) {
+            if ((m & (1 << partitionOf.get(e.getFrom()))) != 0 && (m & (1 << partitionOf.get(e.getTo()))) != 0)
+                edges.add(e);
+        }
+        return GraphBuilder.subgraph(partitions[0], stops, edges); // table des lignes commune
+    }
+
+    //Minorants d'une requête sur le recouvrement, null si la source ou la cible est inconnue
+    private Corridor corridor(Stop source, Stop target) {
+        Integer ps = partitionOf.get(source), pt = partitionOf.get(target);
+        if (ps == null || pt == null) return null;
+        int base = (1 << ps) | (1 << pt);
+        int best = INF;
+        if (ps.equals(pt)) {
+            Dijkstra d = forward[ps].dijkstra();
+            d.run(new int[]{partitions[ps].indexOf(source)}, new int[]{0}, 1, x -> false);
+            best = d.distTo(partitions[pt].indexOf(target));
+        }
+        if (boundary.length == 0) return new Corridor(base, best, new int[0], new int[0]);
+
+        // Durées minimales source -> frontières de sa partition, frontières -> cible
+        int[] fwd = spread(overlay, toBoundary(ps, source, forward[ps]));
+        int[] bwd = spread(overlayReverse, toBoundary(pt, target, backward[pt]));
+        for (int i = 0; i < boundary.length; i++) {
+            if (fwd[i] != INF && bwd[i] != INF) best = Math.min(best, fwd[i] + bwd[i]);
+        }
+        return new Corridor(base, best, fwd, bwd);
+    }
+
+    /**
+     * Minorants par frontière (source -> frontière, frontière -> cible) et plus court minorant.
+     */
+    private final class Corridor {
+        final int base;
+        final int best;
+        final int[] fwd;
+        final int[] bwd;
+
+        Corridor(int base, int best, int[] fwd, int[] bwd) {
+            this.base = base;
+            this.best = best;
+            this.fwd = fwd;
+            this.bwd = bwd;
+        }
+
+        //Partitions de la source, de la cible et des frontières de minorant au plus limit
+        int mask(long limit) {
+            int mask = base;
+            for (int i = 0; i < fwd.length; i++) {
+                if (fwd[i] != INF && bwd[i] != INF && fwd[i] + (long) bwd[i] <= limit) mask |= 1 << boundaryPartition[i];
+            }
+            return mask;
+        }
+    }
+
+    //Heure d'arrivée en suivant l'itinéraire, selon les règles d'AStar
+    private static int arrival(Graph g, List<Edge> path, Stop source, Stop target, int departureSec) {
+        int time = departureSec;
+        Stop at = source;
+        for (Edge e : path) {
+            time += g.transferTimeSec(at, e.getFrom());
+            if (e.getTripId() != null) {
+                int sched = e.getDepartureTimeSec();
+                while (sched < time) sched += 24 * 3600;
+                time = sched;
+            }
+            time += e.getTravelTimeSec();
+            at = e.getTo();
+        }
+        return time + g.transferTimeSec(at, target);
+    }
+
+    //Durées minimales entre un arrêt et les frontières de sa partition, indices du recouvrement
+    private int[] toBoundary(int part, Stop stop, StaticGraph g) {
+        Dijkstra d = g.dijkstra();
+        d.run(new int[]{partitions[part].indexOf(stop)}, new int[]{0}, 1, x -> false);
+        int[] out = new int[boundary.length];
+        Arrays.fill(out, INF);
+        for (int i = 0; i < boundary.length; i++) {
+            if (boundaryPartition[i] == part) out[i] = d.distTo(partitions[part].indexOf(boundary[i]));
+        }
+        return out;
+    }
+
+    //Propagation sur le recouvrement depuis des distances initiales
+    private static int[] spread(StaticGraph overlay, int[] init) {
+        int[] sources = new int[init.length];
+        int[] dist = new int[init.length];
+        int count = 0;
+        for (int i = 0; i < init.length; i++) {
+            if (init[i] == INF) continue;
+            sources[count] = i;
+            dist[count++] = init[i];
+        }
+        Dijkstra d = overlay.dijkstra();
+        d.run(sources, dist, count, x -> false);
+        int[] out = new int[init.length];
+        for (int i = 0; i < out.length; i++) out[i] = d.distTo(i);
+        return out;
+    }
+
+    /**
+     * Graphe statique en CSR (durée minimale par couple d'arrêts), pour {@link Dijkstra}.
+     */
+    private record StaticGraph(int[] offset, int[] head, int[] weight) {
+        static StaticGraph of(Graph g, boolean reverse) {
+            int n = g.stopCount();
+            Arcs arcs = new Arcs(g.edgeCount());
+            int[] arcOf = new int[n];       // arc déjà créé vers cet arrêt, s'il part de l'arrêt courant
+            Arrays.fill(arcOf, -1);
+            for (int s = 0; s < n; s++) {
+                int first = arcs.size;
+                for (int i = g.firstEdge(s); i < g.endEdge(s); i++) {
+                    Edge e = g.getEdge(i);
+                    int to = g.indexOf(e.getTo());
+                    int a = arcOf[to];
+                    if (a >= first) arcs.weight[a] = Math.min(arcs.weight[a], e.getTravelTimeSec());
+                    else arcOf[to] = arcs.add(s, to, e.getTravelTimeSec());
+                }
+            }
+            return of(n, arcs, reverse);
+        }
+
+        static StaticGraph of(int n, Arcs arcs, boolean reverse) {
+            int[] tail = reverse ? arcs.head : arcs.tail;
+            int[] other = reverse ? arcs.tail : arcs.head;
+            int[] offset = new int[n + 1];
+            for (int a = 0; a < arcs.size; a++) offset[tail[a] + 1]++;
+            for (int i = 0; i < n; i++) offset[i + 1] += offset[i];
+            int[] head = new int[arcs.size];
+            int[] weight = new int[arcs.size];
+            int[] cursor = Arrays.copyOf(offset, n);
+            for (int a = 0; a < arcs.size; a++) {
+                int k = cursor[tail[a]]++;
+                head[k] = other[a];
+                weight[k] = arcs.weight[a];
+            }
+            return new StaticGraph(offset, head, weight);
+        }
+
+        Dijkstra dijkstra() {
+            return new Dijkstra(offset, head, weight);
+        }
+    }
+
+    /**
+     * Liste d'arcs (origine, destination, poids) en tableaux parallèles, capacité fixée à la création.
+     */
+    private static final class Arcs {
+        final int[] tail;
+        final int[] head;
+        final int[] weight;
+        int size;
+
+        Arcs(int capacity) {
+            tail = new int[capacity];
+            head = new int[capacity];
+            weight = new int[capacity];
+        }
+
+        //Ajoute un arc, renvoie sa position
+        int add(int from, int to, int w) {
+            tail[size] = from;
+            head[size] = to;
+            weight[size] = w;
+            return size++;
+        }
+    }
+}
@@ -0,0 +1,262 @@
+package algorithm;
+
+import algorithm.graph.Edge;
+import algorithm.graph.Graph;
+import algorithm.graph.GraphView;
+import algorithm.graph.TransportMode;
+import data.Stop;
+
+import java.time.LocalTime;
+import java.util.*;
+
+/**
+ * A* arrière (« arriver avant ») : part de la cible à l'heure limite et remonte
+ * les arcs entrants en propageant l'heure de départ au plus tard de chaque nœud.
+ * Une seule recherche donne le départ le plus tardif depuis la source.
+ * <p>
+ * Mêmes règles qu'{@link AStar} lues à rebours : correspondance interne aux
+ * stations avant tout arc partant d'un autre quai, depuis le quai source et
+ * jusqu'au quai cible, passage de minuit (heures éventuellement négatives), arcs de coût
+ * {@code Integer.MAX_VALUE} ignorés. La durée d'un arc est
+ * {@code cost(e, null)} ; le surcoût lié à l'arc suivant
+ * ({@code cost(suivant, e) - cost(suivant, null)}) n'est ajouté qu'au coût,
+ * l'arc précédent n'étant pas encore connu en remontant. Le coût compte
+ * l'attente : sans surcoût, le premier état atteignant la source est le départ
+ * le plus tardif.
+ * <p>
+ * Comme {@link AStar}, accepte plusieurs sources et cibles avec leur marche
+ * d'accès ou de sortie : les cibles sont semées, les sources mènent au puits.
+ * Sur un graphe aux marches fermées, deux étiquettes par nœud selon que l'arc
+ * suivant est une marche ou non, sans dominance entre elles. Comme dans
+ * {@link AStar}, les étiquettes sont tenues par quai sur un graphe de stations.
+ */
+public class ReverseAStar {
+    private record State(
+            int node,          // indice de l'arrêt dans le graphe
+            int slot,          // étiquette : quai de départ, arc suivant à pied ou non
+            int timeSec,       // heure de départ au plus tard, en secondes depuis minuit
+            int gCost,         // durée depuis ce départ jusqu'à l'heure limite, plus surcoûts
+            int fCost,         // gCost + heuristique
+            State parent,      // état suivant dans le temps
+            Edge via           // arc emprunté pour partir d'ici
+    ) implements Comparable<State> {
+        @Override
+        public int compareTo(State o) {
+            return Integer.compare(this.fCost, o.fCost);
+        }
+    }
+
+    private static final int SINK = -1;
+
+    private final Graph graph;
+    private final Stop[] sourceStops;
+    private final int[] sourceNodes;
+    private final int[] accessSec;
+    private final Set<Integer> sourceNodeSet = new HashSet<>();
+    private final Stop[] targetStops;
+    private final int[] targetNodes;
+    private final int[] egressSec;
+    private final TravelTimeHeuristic heuristic;
+    private final int arrivalSec;
+    private final GraphView view;
+    private final byte[] modes;
+    private final CostFunction costFunction;
+    private final int labels;                 // étiquettes par nœud : 2 si marches fermées
+    private int latestDepartureSec;
+    private Stop reachedSource;
+    private Stop reachedTarget;
+
+    /**
+     * Constructeur pour initialiser la recherche arrière
+     */
+    public ReverseAStar(Graph graph, Stop source, Stop target, LocalTime arrival, CostFunction costFunction) {
+        this(graph.view(GraphView.ALL_MODES), source, target, arrival, costFunction);
+    }
+
+    /**
+     * Constructeur sur une vue filtrée : les arcs des modes exclus ne sont jamais parcourus.
+     */
+    public ReverseAStar(GraphView view, Stop source, Stop target, LocalTime arrival, CostFunction costFunction) {
+        this(view, Map.of(source, 0), Map.of(target, 0), arrival, costFunction);
+    }
+
+    /**
+     * Constructeur multi-sources et multi-cibles.
+     *
+     * @param sources arrêts de départ possibles et marche d'accès de chacun (s)
+     * @param targets arrêts d'arrivée possibles et marche de sortie de chacun (s)
+     */
+    public ReverseAStar(GraphView view, Map<Stop, Integer> sources, Map<Stop, Integer> targets,
+                        LocalTime arrival, CostFunction costFunction) {
+        this.graph = view.getGraph();
+        this.sourceStops = AStar.known(graph, sources);
+        this.sourceNodes = new int[sourceStops.length];
+        this.accessSec = new int[sourceStops.length];
+        Map<Stop, Integer> goals = new HashMap<>();
+        for (int k = 0; k < sourceStops.length; k++) {
+            sourceNodes[k] = graph.indexOf(sourceStops[k]);
+            accessSec[k] = sources.get(sourceStops[k]);
+            goals.put(sourceStops[k], accessSec[k]);
+            sourceNodeSet.add(sourceNodes[k]);
+        }
+        this.targetStops = AStar.known(graph, targets);
+        this.targetNodes = new int[targetStops.length];
+        this.egressSec = new int[targetStops.length];
+        for (int k = 0; k < targetStops.length; k++) {
+            targetNodes[k] = graph.indexOf(targetStops[k]);
+            egressSec[k] = targets.get(targetStops[k]);
+        }
+        this.heuristic = new TravelTimeHeuristic(graph, goals);
+        this.arrivalSec = arrival.toSecondOfDay();
+        this.view = view;
+        this.modes = view.modes();
+        this.costFunction = costFunction;
+        this.labels = graph.footpathsClosed() ? 2 : 1;
+    }
+
+    /**
+     * @return liste des arcs, dans l'ordre du trajet, du départ le plus tardif
+     * arrivant à temps ; null si aucun
+     */
+    public List<Edge> pathTo() {
+        if (sourceNodes.length == 0 || targetNodes.length == 0) return null;
+        int[] bestTime = new int[graph.platformCount() * labels];
+        State endState = search(bestTime, null, arrivalSec, Integer.MIN_VALUE, Long.MAX_VALUE);
+
+        if (endState == null) return null;
+        Stop from = graph.getPlatform(endState.slot / labels);
+        latestDepartureSec = endState.timeSec
+                - AStar.walkVia(graph, sourceStops, sourceNodes, accessSec, endState.node, from);
+        List<Edge> path = new ArrayList<>();
+        State s = endState;
+        for (; s.via != null; s = s.parent)
+            path.add(s.via);
+        reachedSource = AStar.pick(graph, sourceStops, sourceNodes, accessSec, endState.node, from);
+        reachedTarget = graph.getPlatform(s.slot / labels); // étiquette semée : quai cible exact
+        return path;
+    }
+
+    /**
+     * Arbre des départs au plus tard vers les cibles, sans arrêt à la source :
+     * un nœud n'est développé que si son heure moins l'heuristique respecte
+     * {@code earliestSec}.
+     *
+     * @param arrivalSec  heure limite d'arrivée, éventuellement au-delà de 24 h
+     * @param earliestSec heure de départ au plus tôt depuis la source
+     * @param stopNanos   instant ({@link System#nanoTime()}) où la croissance s'interrompt
+     * @return arbre (éventuellement partiel si le délai est dépassé) ; l'arc d'une étiquette est
+     * celui par lequel on part, son parent l'étiquette d'arrivée de cet arc
+     */
+    AStar.Tree growTree(int arrivalSec, int earliestSec, long stopNanos) {
+        AStar.Tree tree = AStar.Tree.empty(graph, labels, Integer.MIN_VALUE);
+        if (targetNodes.length > 0) search(tree.timeSec(), tree, arrivalSec, earliestSec, stopNanos);
+        return tree;
+    }
+
+    /**
+     * Boucle commune : s'arrête au puits si {@code tree} est null, sinon développe
+     * tout l'arbre borné par {@code earliestSec} et {@code stopNanos}.
+     */
+    private State search(int[] bestTime, AStar.Tree tree, int arrivalSec, int earliestSec, long stopNanos) {
+        boolean full = tree != null;
+        PriorityQueue<State> open = new PriorityQueue<>();
+        Arrays.fill(bestTime, Integer.MIN_VALUE);
+
+        for (int k = 0; k < targetNodes.length; k++) {
+            int node = targetNodes[k];
+            int key = AStar.slot(labels, graph.platformIndexOf(targetStops[k]), null);
+            int time = arrivalSec - egressSec[k];
+            if (time > bestTime[key]) {
+                bestTime[key] = time;
+                open.add(new State(node, key, time, egressSec[k], egressSec[k] + heuristic.estimate(node), null, null));
+            }
+        }
+
+        int polled = 0;
+        while (!open.isEmpty()) {
+            State cur = open.poll();
+            if (cur.node == SINK)
+                return cur.parent;
+            if (full && (++polled & 255) == 0 && System.nanoTime() > stopNanos)
+                break;
+
+            if (cur.timeSec < bestTime[cur.slot])
+                continue;
+
+            // source atteinte : passage par le puits après la marche d'accès et la correspondance depuis le quai source
+            Stop at = graph.getPlatform(cur.slot / labels);
+            if (!full && sourceNodeSet.contains(cur.node)) {
+                int access = AStar.walkVia(graph, sourceStops, sourceNodes, accessSec, cur.node, at);
+                int g = cur.gCost + access;
+                open.add(new State(SINK, -1, cur.timeSec - access, g, g, cur, null));
+            }
+
+            Edge next = cur.via;
+            // marches fermées : une marche n'est jamais précédée d'une autre
+            boolean beforeWalk = labels == 2 && next != null && next.isWalk();
+            for (byte m : modes) {
+                if (beforeWalk && m == TransportMode.WALK) continue;
+                for (int i = view.firstInEdge(cur.node, m), end = view.endInEdge(cur.node, m); i < end; i++) {
+                    Edge e = view.getInEdge(i);
+                    int c = costFunction.cost(e, null);
+                    if (c == Integer.MAX_VALUE) continue; // arc interdit par la fonction de coût
+                    int penalty = 0;
+                    if (next != null) {
+                        int pair = costFunction.cost(next, e);
+                        if (pair == Integer.MAX_VALUE) continue;
+                        penalty = pair - costFunction.cost(next, null);
+                    }
+
+                    // correspondance vers le quai de l'étiquette (départ de l'arc suivant, ou quai cible)
+                    int latestArrive = cur.timeSec - graph.transferTimeSec(e.getTo(), at);
+                    int depart;
+                    if (e.getTripId() != null) {
+                        // dernier passage (jour quelconque) arrivant à temps
+                        int sched = e.getDepartureTimeSec();
+                        depart = sched + Math.floorDiv(latestArrive - c - sched, 24 * 3600) * 24 * 3600;
+                    } else {
+                        depart = latestArrive - c;
+                    }
+
+                    int prev = graph.indexOf(e.getFrom());
+                    int key = AStar.slot(labels, graph.platformIndexOf(e.getFrom()), e);
+                    // étiquettes indépendantes : avant un arc horaire il faut compter la correspondance,
+                    // avant une marche il faut un arc non pédestre ; aucune ne domine l'autre
+                    if (depart > bestTime[key]) {
+                        int h = heuristic.estimate(prev);
+                        if (full && (long) depart - h < earliestSec) continue; // hors délai même au mieux
+                        bestTime[key] = depart;
+                        if (full) {
+                            tree.edge()[key] = e;
+                            tree.parent()[key] = cur.slot;  // étiquette de l'arc suivant
+                        }
+                        int g = cur.gCost + (cur.timeSec - depart) + penalty;
+                        open.add(new State(prev, key, depart, g, g + h, cur, e));
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return source retenue par le dernier {@link #pathTo()} (quai de départ de l'itinéraire)
+     */
+    public Stop reachedSource() {
+        return reachedSource;
+    }
+
+    /**
+     * @return cible retenue par le dernier {@link #pathTo()} (quai d'arrivée de l'itinéraire)
+     */
+    public Stop reachedTarget() {
+        return reachedTarget;
+    }
+
+    /**
+     * @return heure de départ au plus tard trouvée par {@link #pathTo()}, marche d'accès comprise
+     */
+    public LocalTime latestDeparture() {
+        return LocalTime.ofSecondOfDay(Math.floorMod(latestDepartureSec, 24 * 3600));
+    }
+}
@@ -0,0 +1,174 @@
+package algorithm;
+
+import algorithm.graph.Edge;
+import algorithm.graph.Graph;
+import data.Stop;
+
+import java.time.LocalTime;
+import java.util.*;
+
+/**
+ * Arrivée au plus tôt par Dijkstra temps-dépendant, sans heuristique ni
+ * fonction de coût : référence pour vérifier les autres moteurs.
+ * <p>
+ * Règles volontairement indépendantes de celles des moteurs : attente du
+ * prochain passage (plusieurs jours possibles), correspondance interne aux
+ * stations avant tout arc partant d'un autre quai (depuis le quai source et
+ * jusqu'au quai cible compris), et marches enchaînées librement,
+ * la durée de marche consécutive étant seulement bornée par {@code maxWalkSec}.
+ * À lancer sur le graphe des marches directes (non fermé) : avec la borne de la
+ * table des marches, il doit donner les mêmes arrivées que les moteurs qui
+ * interdisent deux marches de suite sur le graphe fermé.
+ * <p>
+ * Sans borne, une seule étiquette par arrêt. Avec borne, un arrêt garde les
+ * étiquettes (heure, marche consécutive) qu'aucune autre ne domine sur les deux
+ * critères : la recherche reste exacte. Sur un graphe de stations, les
+ * étiquettes sont tenues par quai, la correspondance dépendant du quai d'arrivée.
+ */
+public class TimeDependentDijkstra {
+    private final Graph graph;
+    private final List<List<Label>> labels;   // étiquettes fixées, par quai
+    private final List<List<Label>> atStop;   // étiquettes fixées, par arrêt
+    private final Stop target;
+    private Label bestTarget;                 // étiquette menant le plus tôt au quai cible
+    private int bestTargetSec = Integer.MAX_VALUE;
+    private int settledCount;
+
+    /**
+     * Lance la recherche depuis la source, marches enchaînées sans limite ;
+     * s'arrête dès que la cible est fixée.
+     *
+     * @param target arrêt d'arrivée, null pour calculer tous les arrêts
+     */
+    public TimeDependentDijkstra(Graph graph, Stop source, LocalTime departure, Stop target) {
+        this(graph, source, departure, target, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param maxWalkSec durée maximale d'une suite de marches sans trajet entre elles, en secondes
+     */
+    public TimeDependentDijkstra(Graph graph, Stop source, LocalTime departure, Stop target, int maxWalkSec) {
+        this.graph = graph;
+        this.labels = new ArrayList<>(Collections.nCopies(graph.platformCount(), null));
+        this.atStop = new ArrayList<>(Collections.nCopies(graph.stopCount(), null));
+        this.target = target;
+        int s = graph.indexOf(source);
+        int t = target == null ? -1 : graph.indexOf(target);
+        if (s < 0) return;
+
+        // 1) Initialisation
+        PriorityQueue<Label> pq = new PriorityQueue<>();
+        pq.add(new Label(s, graph.platformIndexOf(source), departure.toSecondOfDay(), 0, null, null));
+
+        // 2) Boucle principale
+        while (!pq.isEmpty()) {
+            Label n = pq.poll();
+            // la correspondance jusqu'au quai cible est positive : plus rien ne peut arriver plus tôt
+            if (n.time >= bestTargetSec) break;
+            // on ignore les étiquettes dominées par une étiquette déjà fixée
+            if (dominated(n.platform, n.time, n.walkRun)) continue;
+            if (labels.get(n.platform) == null) labels.set(n.platform, new ArrayList<>(1));
+            labels.get(n.platform).add(n);
+            if (atStop.get(n.stop) == null) atStop.set(n.stop, new ArrayList<>(1));
+            atStop.get(n.stop).add(n);
+            settledCount++;
+            if (n.stop == t) {
+                int arrive = n.time + graph.transferTimeSec(graph.getPlatform(n.platform), target);
+                if (arrive < bestTargetSec) {
+                    bestTargetSec = arrive;
+                    bestTarget = n;
+                }
+            }
+            // relaxer toutes les arêtes sortantes
+            for (int i = graph.firstEdge(n.stop), end = graph.endEdge(n.stop); i < end; i++) {
+                Edge e = graph.getEdge(i);
+                int walkRun = 0;
+                if (e.isWalk()) {
+                    if ((long) n.walkRun + e.getTravelTimeSec() > maxWalkSec) continue;
+                    // sans borne, la marche consécutive n'est pas suivie : une étiquette par arrêt
+                    walkRun = maxWalkSec == Integer.MAX_VALUE ? 0 : n.walkRun + e.getTravelTimeSec();
+                }
+                int arrive = departFor(e, n) + e.getTravelTimeSec();
+                int platform = graph.platformIndexOf(e.getTo());
+                if (!dominated(platform, arrive, walkRun))
+                    pq.add(new Label(graph.indexOf(e.getTo()), platform, arrive, walkRun, e, n));
+            }
+        }
+    }
+
+    //Heure de départ par l'arc e depuis l'étiquette n, correspondance depuis son quai comprise
+    private int departFor(Edge e, Label n) {
+        int depart = n.time + graph.transferTimeSec(graph.getPlatform(n.platform), e.getFrom());
+        if (e.getTripId() != null) {
+            int sched = e.getDepartureTimeSec();
+            while (sched < depart) sched += 24 * 3600;
+            depart = sched;
+        }
+        return depart;
+    }
+
+    //Vrai si une étiquette fixée du quai est au moins aussi tôt avec au plus autant de marche
+    private boolean dominated(int platform, int time, int walkRun) {
+        List<Label> fixed = labels.get(platform);
+        if (fixed == null) return false;
+        for (Label l : fixed) {
+            if (l.time <= time && l.walkRun <= walkRun) return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return heure d'arrivée au plus tôt au quai {@code v} en secondes (au-delà de 24 h le lendemain),
+     * {@code Integer.MAX_VALUE} si l'arrêt n'est pas atteint
+     */
+    public int arrivalSec(Stop v) {
+        Label l = bestLabel(v);
+        return l == null ? Integer.MAX_VALUE : l.time + graph.transferTimeSec(graph.getPlatform(l.platform), v);
+    }
+
+    public boolean hasPathTo(Stop v) {
+        return arrivalSec(v) < Integer.MAX_VALUE;
+    }
+
+    public List<Edge> pathTo(Stop v) {
+        if (!hasPathTo(v)) return null;
+        LinkedList<Edge> path = new LinkedList<>();
+        for (Label l = bestLabel(v); l.via != null; l = l.parent) {
+            path.addFirst(l.via);
+        }
+        return path;
+    }
+
+    //Étiquette fixée du nœud de v menant le plus tôt au quai v (la recherche s'arrête à la cible)
+    private Label bestLabel(Stop v) {
+        if (v == target) return bestTarget;
+        int i = graph.indexOf(v);
+        if (i < 0 || atStop.get(i) == null) return null;
+        Label best = null;
+        long bestSec = Long.MAX_VALUE;
+        for (Label l : atStop.get(i)) {
+            long sec = (long) l.time + graph.transferTimeSec(graph.getPlatform(l.platform), v);
+            if (sec < bestSec) {
+                bestSec = sec;
+                best = l;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * @return nombre d'étiquettes fixées pendant la recherche
+     */
+    public int settledCount() {
+        return settledCount;
+    }
+
+    // étiquette : arrêt, quai, heure, marche consécutive jusqu'ici, arc et étiquette précédente
+    private record Label(int stop, int platform, int time, int walkRun, Edge via, Label parent) implements Comparable<Label> {
+        @Override
+        public int compareTo(Label o) {
+            int c = Integer.compare(this.time, o.time);
+            return c != 0 ? c : Integer.compare(this.walkRun, o.walkRun);
+        }
+    }
+}
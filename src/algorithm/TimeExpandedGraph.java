@@ -0,0 +1,305 @@
+package algorithm;
+
+import algorithm.graph.Edge;
+import algorithm.graph.Graph;
+import algorithm.graph.TransportMode;
+import data.Stop;
+
+import java.time.LocalTime;
+import java.util.*;
+
+/**
+ * Modèle espace-temps : chaque départ d'un trajet est un nœud (événement),
+ * ainsi que l'arrivée correspondante, et une requête se résout par un
+ * {@link Dijkstra} statique.
+ * <p>
+ * Les départs d'un arrêt sont triés par heure du jour et reliés par une chaîne
+ * d'attente, dont le dernier maillon revient au premier le lendemain. Un arc de
+ * trajet relie chaque départ à son arrivée. Depuis une arrivée, un arc mène au
+ * premier départ suivant au même arrêt (correspondance sur place) et, pour
+ * chaque marche vers un voisin, au premier départ du voisin après la marche :
+ * aucun événement n'est créé pour les marches. Chaque arrêt a enfin un nœud
+ * terminal, atteint depuis ses arrivées et par marche depuis les arrivées
+ * voisines : c'est le but de la recherche. Le poids d'un arc est une durée :
+ * ni horaire ni passage de minuit à évaluer pendant la recherche.
+ * <p>
+ * Une seule marche après chaque arrivée (pas de marches enchaînées), comme
+ * le moteur trip-based.
+ */
+public final class TimeExpandedGraph {
+    private static final int DAY = 24 * 3600;
+
+    private final Graph graph;
+    private final int rides;              // départs : nœuds [0, rides), arrivées : [rides, 2 rides), terminaux ensuite
+    private final int[] stopFirstDeparture; // départs de l'arrêt s : [stopFirstDeparture[s], stopFirstDeparture[s + 1])
+    private final int[] departureTime;    // heure du jour (s), croissante par arrêt
+    private final int[] arcOffset;
+    private final int[] arcHead;
+    private final int[] arcWeight;
+    private final int[] arcEdge;          // position de l'arc du graphe, -1 pour une attente
+    private int settledCount;
+
+    private TimeExpandedGraph(Graph graph, int rides, int[] stopFirstDeparture, int[] departureTime,
+                              int[] arcOffset, int[] arcHead, int[] arcWeight, int[] arcEdge) {
+        this.graph = graph;
+        this.rides = rides;
+        this.stopFirstDeparture = stopFirstDeparture;
+        this.departureTime = departureTime;
+        this.arcOffset = arcOffset;
+        this.arcHead = arcHead;
+        this.arcWeight = arcWeight;
+        this.arcEdge = arcEdge;
+    }
+
+    /**
+     * Construit le modèle espace-temps d'un graphe temps-dépendant.
+     *
+     * @param graph graphe issu de {@link algorithm.graph.GraphBuilder}
+     * @return graphe espace-temps
+     */
+    public static TimeExpandedGraph build(Graph graph) {
+        int n = graph.stopCount();
+
+        // Départs triés par (arrêt, heure) : les arcs horaires sont déjà rangés par arrêt,
+        // tri d'indices par arrêt sur la clé (heure, position de l'arc)
+        int t = 0;
+        int[] stopFirstDeparture = new int[n + 1];
+        for (int s = 0; s < n; s++) {
+            t += graph.endEdge(s) - graph.endEdge(s, TransportMode.WALK);
+            stopFirstDeparture[s + 1] = t;
+        }
+        long[] keys = new long[t];
+        for (int s = 0, k = 0; s < n; s++) {
+            for (int i = graph.endEdge(s, TransportMode.WALK); i < graph.endEdge(s); i++, k++) {
+                keys[k] = (long) (graph.getEdge(i).getDepartureTimeSec() % DAY) << 32 | i;
+            }
+            Arrays.sort(keys, stopFirstDeparture[s], stopFirstDeparture[s + 1]);
+        }
+        int[] ride = new int[t];            // départ -> position de l'arc horaire
+        int[] departureTime = new int[t];
+        for (int r = 0; r < t; r++) {
+            ride[r] = (int) keys[r];
+            departureTime[r] = (int) (keys[r] >>> 32);
+        }
+
+        // Degré sortant : attente et trajet par départ ; par arrivée, terminal et premier
+        // départ sur place, puis terminal et premier départ de chaque voisin à pied
+        int nodes = 2 * t + n;
+        int[] arcOffset = new int[nodes + 1];
+        for (int s = 0; s < n; s++) {
+            for (int r = stopFirstDeparture[s]; r < stopFirstDeparture[s + 1]; r++) {
+                arcOffset[r + 1] = stopFirstDeparture[s + 1] - stopFirstDeparture[s] > 1 ? 2 : 1;
+                int to = graph.indexOf(graph.getEdge(ride[r]).getTo());
+                int degree = 1 + (hasDeparture(stopFirstDeparture, to) ? 1 : 0);
+                for (int i = graph.firstEdge(to, TransportMode.WALK); i < graph.endEdge(to, TransportMode.WALK); i++) {
+                    degree += 1 + (hasDeparture(stopFirstDeparture, graph.indexOf(graph.getEdge(i).getTo())) ? 1 : 0);
+                }
+                arcOffset[t + r + 1] = degree;
+            }
+        }
+        for (int v = 0; v < nodes; v++) arcOffset[v + 1] += arcOffset[v];
+        int arcs = arcOffset[nodes];
+        TimeExpandedGraph te = new TimeExpandedGraph(graph, t, stopFirstDeparture, departureTime,
+                arcOffset, new int[arcs], new int[arcs], new int[arcs]);
+
+        for (int s = 0; s < n; s++) {
+            int first = stopFirstDeparture[s], end = stopFirstDeparture[s + 1];
+            for (int r = first; r < end; r++) {
+                int a = arcOffset[r];
+                if (end - first > 1) {
+                    int next = r + 1 < end ? r + 1 : first;
+                    a = te.arc(a, next, wait(departureTime[r], departureTime[next]), -1);
+                }
+                Edge e = graph.getEdge(ride[r]);
+                te.arc(a, t + r, e.getTravelTimeSec(), ride[r]);
+
+                // arrivée : sur place, puis une marche vers chaque voisin
+                int to = graph.indexOf(e.getTo());
+                int arrive = (departureTime[r] + e.getTravelTimeSec()) % DAY;
+                a = te.link(arcOffset[t + r], to, arrive, 0, -1);
+                for (int i = graph.firstEdge(to, TransportMode.WALK); i < graph.endEdge(to, TransportMode.WALK); i++) {
+                    Edge walk = graph.getEdge(i);
+                    a = te.link(a, graph.indexOf(walk.getTo()), arrive, walk.getTravelTimeSec(), i);
+                }
+            }
+        }
+        return te;
+    }
+
+    private int arc(int a, int head, int weight, int edge) {
+        arcHead[a] = head;
+        arcWeight[a] = weight;
+        arcEdge[a] = edge;
+        return a + 1;
+    }
+
+    //Arcs d'une arrivée vers le terminal de l'arrêt et vers son premier départ, après la marche
+    private int link(int a, int stop, int arrive, int walkSec, int walkEdge) {
+        a = arc(a, terminal(stop), walkSec, walkEdge);
+        int at = (arrive + walkSec) % DAY;
+        int d = nextDeparture(stop, at);
+        return d < 0 ? a : arc(a, d, walkSec + wait(at, departureTime[d]), walkEdge);
+    }
+
+    private int terminal(int stop) {
+        return 2 * rides + stop;
+    }
+
+    private static boolean hasDeparture(int[] stopFirstDeparture, int stop) {
+        return stopFirstDeparture[stop + 1] > stopFirstDeparture[stop];
+    }
+
+    /**
+     * @return nombre d'événements (nœuds : départs, arrivées, terminaux)
+     */
+    public int eventCount() {
+        return arcOffset.length - 1;
+    }
+
+    /**
+     * @return nombre d'arcs (attente, trajet, correspondance, marche)
+     */
+    public int arcCount() {
+        return arcHead.length;
+    }
+
+    /**
+     * @return nombre d'événements fixés lors du dernier {@link #pathTo}
+     */
+    public int settledCount() {
+        return settledCount;
+    }
+
+    /**
+     * Arrivée au plus tôt par Dijkstra statique sur les événements.
+     *
+     * @param source    arrêt de départ
+     * @param target    arrêt d'arrivée
+     * @param departure heure de départ
+     * @return arcs du graphe temps-dépendant empruntés (attentes omises), null si aucun chemin
+     */
+    public List<Edge> pathTo(Stop source, Stop target, LocalTime departure) {
+        return pathTo(List.of(source), List.of(target), departure);
+    }
+
+    /**
+     * Arrivée au plus tôt depuis le meilleur des arrêts de départ vers le
+     * meilleur des arrêts d'arrivée (arrêts d'un même lieu, sans marche d'accès
+     * ni de sortie).
+     *
+     * @param sources   arrêts de départ possibles
+     * @param targets   arrêts d'arrivée possibles
+     * @param departure heure de départ
+     * @return arcs du graphe temps-dépendant empruntés (attentes omises), null si aucun chemin
+     */
+    public List<Edge> pathTo(Collection<Stop> sources, Collection<Stop> targets, LocalTime departure) {
+        settledCount = 0;
+        int[] srcs = indices(sources);
+        int[] dsts = indices(targets);
+        if (srcs.length == 0 || dsts.length == 0) return null;
+        for (int src : srcs) if (contains(dsts, dsts.length, src)) return new LinkedList<>();
+        int t0 = departure.toSecondOfDay();
+
+        // Sources : premier départ à chaque source, et aux arrêts voisins atteints à pied ;
+        // une marche directe vers une cible mène à son terminal. Par événement, le meilleur amorçage
+        int capacity = 0;
+        for (int src : srcs) capacity += 1 + graph.endEdge(src, TransportMode.WALK) - graph.firstEdge(src, TransportMode.WALK);
+        int[] seeds = new int[capacity];
+        int[] seedDist = new int[capacity];
+        Edge[] seedWalk = new Edge[capacity];   // marche depuis la source, null si départ sur place
+        int count = 0;
+        for (int src : srcs) {
+            int v = nextDeparture(src, t0);
+            if (v >= 0) count = addSeed(seeds, seedDist, seedWalk, count, v, wait(t0, departureTime[v]), null);
+            for (int i = graph.firstEdge(src, TransportMode.WALK); i < graph.endEdge(src, TransportMode.WALK); i++) {
+                Edge e = graph.getEdge(i);
+                int u = graph.indexOf(e.getTo());
+                int at = (t0 + e.getTravelTimeSec()) % DAY;
+                boolean toTarget = contains(dsts, dsts.length, u);
+                v = toTarget ? terminal(u) : nextDeparture(u, at);
+                if (v < 0) continue;
+                int d = toTarget ? e.getTravelTimeSec() : e.getTravelTimeSec() + wait(at, departureTime[v]);
+                count = addSeed(seeds, seedDist, seedWalk, count, v, d, e);
+            }
+        }
+
+        Dijkstra dijkstra = new Dijkstra(arcOffset, arcHead, arcWeight);
+        int[] goals = new int[dsts.length];
+        for (int k = 0; k < dsts.length; k++) goals[k] = terminal(dsts[k]);
+        int reached = dijkstra.run(seeds, seedDist, count, x -> contains(goals, goals.length, x));
+        settledCount = dijkstra.settledCount();
+        if (reached < 0) return null;
+        LinkedList<Edge> path = new LinkedList<>();
+        int x = reached;
+        while (dijkstra.arcTo(x) >= 0) {
+            int a = dijkstra.arcTo(x);
+            if (arcEdge[a] >= 0) path.addFirst(graph.getEdge(arcEdge[a]));
+            x = tail(a);
+        }
+        // source atteinte à pied depuis l'arrêt de départ
+        for (int k = 0; k < count; k++) {
+            if (seeds[k] == x && seedWalk[k] != null) path.addFirst(seedWalk[k]);
+        }
+        return path;
+    }
+
+    //Ajoute ou améliore l'amorçage de l'événement v ; renvoie le nouveau nombre d'amorçages
+    private static int addSeed(int[] seeds, int[] seedDist, Edge[] seedWalk, int count, int v, int d, Edge walk) {
+        for (int k = 0; k < count; k++) {
+            if (seeds[k] != v) continue;
+            if (d < seedDist[k]) {
+                seedDist[k] = d;
+                seedWalk[k] = walk;
+            }
+            return count;
+        }
+        seeds[count] = v;
+        seedDist[count] = d;
+        seedWalk[count] = walk;
+        return count + 1;
+    }
+
+    //Indices distincts des arrêts connus du graphe
+    private int[] indices(Collection<Stop> stops) {
+        int[] out = new int[stops.size()];
+        int n = 0;
+        for (Stop s : stops) {
+            int i = graph.indexOf(s);
+            if (i >= 0 && !contains(out, n, i)) out[n++] = i;
+        }
+        return Arrays.copyOf(out, n);
+    }
+
+    private static boolean contains(int[] values, int count, int v) {
+        for (int i = 0; i < count; i++) if (values[i] == v) return true;
+        return false;
+    }
+
+    //Premier départ de l'arrêt à l'heure du jour {@code time} ou après (le lendemain sinon), -1 si aucun
+    private int nextDeparture(int stop, int time) {
+        int lo = stopFirstDeparture[stop], hi = stopFirstDeparture[stop + 1];
+        if (lo == hi) return -1;
+        int first = lo;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (departureTime[mid] < time) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo < stopFirstDeparture[stop + 1] ? lo : first;
+    }
+
+    private static int wait(int from, int to) {
+        return to >= from ? to - from : to + DAY - from;
+    }
+
+    //Nœud de départ de l'arc (recherche dans les débuts de plages)
+    private int tail(int arc) {
+        int lo = 0, hi = arcOffset.length - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (arcOffset[mid] <= arc) lo = mid;
+            else hi = mid - 1;
+        }
+        return lo;
+    }
+}
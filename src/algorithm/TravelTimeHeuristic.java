@@ -0,0 +1,65 @@
+package algorithm;
+
+import algorithm.graph.GeoKernel;
+import algorithm.graph.Graph;
+import data.Stop;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Heuristique commune aux recherches A* avant et arrière :
+ * distance à vol d'oiseau jusqu'au but / vitesse max (en secondes).
+ * La vitesse max est celle observée sur les arcs du graphe
+ * ({@link Graph#maxSpeedMps()}, arcs de durée nulle fusionnés avec leurs
+ * voisins) : l'estimation est un minorant.
+ * La distance est la corde du {@link GeoKernel}, minorant sans trigonométrie.
+ * Avec plusieurs buts, minimum sur les buts de l'estimation plus la marche
+ * d'accès (ou de sortie) propre à chacun.
+ */
+public final class TravelTimeHeuristic {
+    private final GeoKernel geo;
+    private final double maxSpeedMps;
+    private final int[] goals;
+    private final int[] offsetSec;
+
+    /**
+     * @param graph graphe dont les indices de nœuds sont estimés
+     * @param goal  arrêt vers lequel on estime la durée (la cible en avant, la source en arrière)
+     */
+    public TravelTimeHeuristic(Graph graph, Stop goal) {
+        this(graph, Map.of(goal, 0));
+    }
+
+    /**
+     * @param graph graphe dont les indices de nœuds sont estimés
+     * @param goals buts et durée de marche ajoutée à chacun, en secondes
+     */
+    public TravelTimeHeuristic(Graph graph, Map<Stop, Integer> goals) {
+        this.geo = graph.geo();
+        this.maxSpeedMps = graph.maxSpeedMps();
+        int[] nodes = new int[goals.size()];
+        int[] offsets = new int[goals.size()];
+        int k = 0;
+        for (Map.Entry<Stop, Integer> en : goals.entrySet()) {
+            int g = graph.indexOf(en.getKey());
+            if (g < 0) continue; // but hors du graphe : la recherche n'aboutira pas
+            nodes[k] = g;
+            offsets[k++] = en.getValue();
+        }
+        this.goals = Arrays.copyOf(nodes, k);
+        this.offsetSec = Arrays.copyOf(offsets, k);
+    }
+
+    /**
+     * @param node indice de nœud
+     * @return minorant de la durée entre le nœud et le but le plus proche, en secondes
+     */
+    public int estimate(int node) {
+        int best = goals.length == 0 ? 0 : Integer.MAX_VALUE;
+        for (int k = 0; k < goals.length; k++) {
+            best = Math.min(best, (int) (geo.lowerBound(node, goals[k]) / maxSpeedMps) + offsetSec[k]);
+        }
+        return best;
+    }
+}
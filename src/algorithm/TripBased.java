@@ -0,0 +1,429 @@
+package algorithm;
+
+import algorithm.graph.Edge;
+import algorithm.graph.Graph;
+import algorithm.graph.PatternTimetable;
+import algorithm.graph.TransportMode;
+import data.Stop;
+
+import java.time.LocalTime;
+import java.util.*;
+import java.util.stream.IntStream;
+
+/**
+ * Routage « trip-based » : les correspondances utiles entre trajets sont
+ * précalculées une fois pour toutes à partir des arcs du graphe, puis chaque
+ * requête est un parcours en largeur sur des segments de trajets.
+ * <p>
+ * Les lignes sont les motifs de {@link PatternTimetable} : trajets qui
+ * desservent la même suite d'arrêts sans se dépasser. Pour chaque arrêt d'un
+ * trajet, on ne garde que la correspondance vers le premier trajet de chaque
+ * ligne atteignable (sur place ou via un arc de marche), puis on élimine les
+ * demi-tours et les correspondances qui n'améliorent aucune heure d'arrivée.
+ * <p>
+ * Les heures et les arrêts sont lus dans {@link PatternTimetable}, sans copie
+ * par position ; seules les correspondances sont rangées ici. Seuls les
+ * trajets du jour sont considérés (pas de passage au lendemain).
+ */
+public class TripBased {
+    private static final int INF = Integer.MAX_VALUE;
+    private static final int MAX_ROUNDS = 16;
+
+    private final Graph graph;
+    private final PatternTimetable patterns;
+    private final int[][] walkTo;          // arrêt -> arrêts voisins à pied
+    private final Edge[][] walkEdge;       // arrêt -> arcs de marche correspondants
+
+    // Trajets (ceux de PatternTimetable), positions numérotées à plat
+    private final int[] tripOffset;        // première position aplatie du trajet
+
+    // Arrêt -> (ligne, position), toutes positions confondues
+    private final int[] stopLineOffset;
+    private final int[] stopLineLine;
+    private final int[] stopLinePos;
+
+    // Correspondances par position aplatie (trajet, arrêt)
+    private final int[] transferOffset;
+    private final int[] transferTrip;
+    private final int[] transferPos;
+    private final Edge[] transferEdge;     // null si correspondance sur place
+
+    private TripBased(Graph graph, PatternTimetable patterns) {
+        this.graph = graph;
+        this.patterns = patterns;
+        int nStops = graph.stopCount();
+
+        // Arcs de marche par arrêt
+        walkTo = new int[nStops][];
+        walkEdge = new Edge[nStops][];
+        for (int s = 0; s < nStops; s++) {
+            int w0 = graph.firstEdge(s, TransportMode.WALK), w1 = graph.endEdge(s, TransportMode.WALK);
+            walkEdge[s] = new Edge[w1 - w0];
+            walkTo[s] = new int[w1 - w0];
+            for (int i = w0; i < w1; i++) {
+                walkEdge[s][i - w0] = graph.getEdge(i);
+                walkTo[s][i - w0] = graph.indexOf(graph.getEdge(i).getTo());
+            }
+        }
+
+        // Les lignes sont les motifs ; une position aplatie par (trajet, arrêt) pour les correspondances
+        int nLines = patterns.patternCount();
+        int nTrips = patterns.tripCount();
+        tripOffset = new int[nTrips];
+        int flat = 0;
+        for (int t = 0; t < nTrips; t++) {
+            tripOffset[t] = flat;
+            flat += tripLength(t);
+        }
+        // Arrêt -> (ligne, position), toutes positions confondues, en CSR
+        stopLineOffset = new int[nStops + 1];
+        for (int li = 0; li < nLines; li++) {
+            for (int i = 0; i < patterns.length(li); i++) stopLineOffset[patterns.stopAt(li, i) + 1]++;
+        }
+        for (int s = 0; s < nStops; s++) stopLineOffset[s + 1] += stopLineOffset[s];
+        stopLineLine = new int[stopLineOffset[nStops]];
+        stopLinePos = new int[stopLineOffset[nStops]];
+        int[] fill = Arrays.copyOf(stopLineOffset, nStops);
+        for (int li = 0; li < nLines; li++) {
+            for (int i = 0; i < patterns.length(li); i++) {
+                int s = patterns.stopAt(li, i);
+                stopLineLine[fill[s]] = li;
+                stopLinePos[fill[s]] = i;
+                fill[s]++;
+            }
+        }
+
+        // Précalcul parallèle des correspondances, trajet par trajet
+        ThreadLocal<int[]> scratch = ThreadLocal.withInitial(() -> {
+            int[] a = new int[nStops];
+            Arrays.fill(a, INF);
+            return a;
+        });
+        Transfers[] perTrip = new Transfers[nTrips];
+        IntStream.range(0, nTrips).parallel()
+                .forEach(t -> perTrip[t] = computeTransfers(t, scratch.get()));
+
+        transferOffset = new int[flat + 1];
+        for (int t = 0; t < nTrips; t++) {
+            Transfers tr = perTrip[t];
+            for (int k = 0; k < tr.size; k++) transferOffset[tripOffset[t] + tr.fromPos[k] + 1]++;
+        }
+        for (int i = 0; i < flat; i++) transferOffset[i + 1] += transferOffset[i];
+        int nTransfers = transferOffset[flat];
+        transferTrip = new int[nTransfers];
+        transferPos = new int[nTransfers];
+        transferEdge = new Edge[nTransfers];
+        int[] next = Arrays.copyOf(transferOffset, flat);
+        for (int t = 0; t < nTrips; t++) {
+            Transfers tr = perTrip[t];
+            for (int k = 0; k < tr.size; k++) {
+                int slot = next[tripOffset[t] + tr.fromPos[k]]++;
+                transferTrip[slot] = tr.toTrip[k];
+                transferPos[slot] = tr.toPos[k];
+                transferEdge[slot] = tr.edge[k];
+            }
+        }
+    }
+
+    /**
+     * Précalcule les correspondances d'un réseau.
+     *
+     * @param graph    graphe dont les arcs de marche sont repris (mêmes indices d'arrêts que les motifs)
+     * @param patterns horaires par motif relevés par {@link algorithm.graph.GraphBuilder}
+     * @return moteur prêt à répondre aux requêtes
+     */
+    public static TripBased build(Graph graph, PatternTimetable patterns) {
+        return new TripBased(graph, patterns);
+    }
+
+    /**
+     * @return nombre de correspondances conservées après élagage
+     */
+    public int transferCount() {
+        return transferTrip.length;
+    }
+
+    /**
+     * Itinéraire arrivant au plus tôt, à nombre de correspondances minimal à arrivée égale.
+     *
+     * @param source    arrêt de départ
+     * @param target    arrêt d'arrivée
+     * @param departure heure de départ
+     * @return liste des arcs empruntés, ou null si aucun chemin
+     */
+    public List<Edge> pathTo(Stop source, Stop target, LocalTime departure) {
+        return pathTo(List.of(source), List.of(target), departure);
+    }
+
+    /**
+     * Itinéraire depuis le meilleur des arrêts de départ vers le meilleur des
+     * arrêts d'arrivée (arrêts d'un même lieu, sans marche d'accès ni de sortie).
+     *
+     * @param sources   arrêts de départ possibles
+     * @param targets   arrêts d'arrivée possibles
+     * @param departure heure de départ
+     * @return liste des arcs empruntés, ou null si aucun chemin
+     */
+    public List<Edge> pathTo(Collection<Stop> sources, Collection<Stop> targets, LocalTime departure) {
+        int[] srcs = indices(sources);
+        int[] dsts = indices(targets);
+        if (srcs.length == 0 || dsts.length == 0) return null;
+        for (int src : srcs) if (contains(dsts, dsts.length, src)) return new LinkedList<>();
+        int departureSec = departure.toSecondOfDay();
+
+        // Marche directe vers une cible (sans transport)
+        int best = INF;
+        Edge directWalk = null;
+        for (int src : srcs) {
+            for (int k = 0; k < walkTo[src].length; k++) {
+                if (contains(dsts, dsts.length, walkTo[src][k]) && departureSec + walkEdge[src][k].getTravelTimeSec() < best) {
+                    best = departureSec + walkEdge[src][k].getTravelTimeSec();
+                    directWalk = walkEdge[src][k];
+                }
+            }
+        }
+
+        // Lignes qui desservent une cible, directement ou à pied (marche la plus courte par arrêt)
+        Map<Integer, List<int[]>> lineTargets = new HashMap<>();  // ligne -> {position, marche}
+        Map<Integer, Edge> egressEdge = new HashMap<>();          // arrêt -> arc de marche vers une cible
+        for (int dst : dsts) {
+            addTargetLines(dst, 0, lineTargets);
+            for (int k = 0; k < walkTo[dst].length; k++) {
+                int r = walkTo[dst][k];
+                for (Edge e : walkEdge[r]) {
+                    Edge prev = egressEdge.get(r);
+                    if (graph.indexOf(e.getTo()) == dst
+                            && (prev == null || e.getTravelTimeSec() < prev.getTravelTimeSec()))
+                        egressEdge.put(r, e);
+                }
+            }
+        }
+        egressEdge.forEach((r, e) -> addTargetLines(r, e.getTravelTimeSec(), lineTargets));
+
+        Query q = new Query(patterns.tripCount());
+
+        // Trajets accessibles depuis les sources (sur place ou à pied)
+        for (int src : srcs) {
+            seed(q, src, departureSec, null);
+            for (int k = 0; k < walkTo[src].length; k++) {
+                seed(q, walkTo[src][k], departureSec + walkEdge[src][k].getTravelTimeSec(), walkEdge[src][k]);
+            }
+        }
+
+        int bestSeg = -1, bestPos = -1;
+        Edge bestEgress = null;
+        int from = 0;
+        for (int round = 0; round < MAX_ROUNDS && from < q.size; round++) {
+            int to = q.size;
+            for (int s = from; s < to; s++) {
+                int t = q.trip[s], b = q.board[s], e = q.end[s];
+                int off = tripOffset[t];
+                if (patterns.departure(t, b + 1) >= best) continue;
+
+                // La cible est-elle atteinte par ce segment ?
+                List<int[]> ends = lineTargets.get(patterns.patternOf(t));
+                if (ends != null) {
+                    for (int[] tg : ends) {
+                        int k = tg[0];
+                        if (k > b && k <= e && patterns.departure(t, k) + tg[1] < best) {
+                            best = patterns.departure(t, k) + tg[1];
+                            bestSeg = s;
+                            bestPos = k;
+                            bestEgress = tg[1] == 0 ? null : egressEdge.get(stopAt(t, k));
+                        }
+                    }
+                }
+
+                // Correspondances vers le tour suivant
+                for (int k = b + 1; k <= e; k++) {
+                    if (patterns.departure(t, k) >= best) break;
+                    for (int x = transferOffset[off + k]; x < transferOffset[off + k + 1]; x++) {
+                        q.enqueue(transferTrip[x], transferPos[x], s, k, transferEdge[x]);
+                    }
+                }
+            }
+            from = to;
+        }
+
+        if (bestSeg < 0) {
+            if (directWalk == null) return null;
+            LinkedList<Edge> walk = new LinkedList<>();
+            walk.add(directWalk);
+            return walk;
+        }
+
+        LinkedList<Edge> path = new LinkedList<>();
+        if (bestEgress != null) path.addFirst(bestEgress);
+        int alight = bestPos;
+        for (int s = bestSeg; s >= 0; s = q.parent[s]) {
+            for (int k = alight - 1; k >= q.board[s]; k--) path.addFirst(patterns.hop(q.trip[s], k));
+            if (q.via[s] != null) path.addFirst(q.via[s]);
+            alight = q.parentAlight[s];
+        }
+        return path;
+    }
+
+    //Indices distincts des arrêts connus du graphe
+    private int[] indices(Collection<Stop> stops) {
+        int[] out = new int[stops.size()];
+        int n = 0;
+        for (Stop s : stops) {
+            int i = graph.indexOf(s);
+            if (i >= 0 && !contains(out, n, i)) out[n++] = i;
+        }
+        return Arrays.copyOf(out, n);
+    }
+
+    private static boolean contains(int[] values, int count, int v) {
+        for (int i = 0; i < count; i++) if (values[i] == v) return true;
+        return false;
+    }
+
+    private void addTargetLines(int stop, int walk, Map<Integer, List<int[]>> lineTargets) {
+        for (int x = stopLineOffset[stop]; x < stopLineOffset[stop + 1]; x++) {
+            if (stopLinePos[x] == 0) continue;
+            lineTargets.computeIfAbsent(stopLineLine[x], k -> new ArrayList<>()).add(new int[]{stopLinePos[x], walk});
+        }
+    }
+
+    private void seed(Query q, int stop, int time, Edge via) {
+        for (int x = stopLineOffset[stop]; x < stopLineOffset[stop + 1]; x++) {
+            if (isLastStop(stopLineLine[x], stopLinePos[x])) continue;
+            int t = patterns.earliestTrip(stopLineLine[x], stopLinePos[x], time);
+            if (t >= 0) q.enqueue(t, stopLinePos[x], -1, -1, via);
+        }
+    }
+
+    private boolean isLastStop(int line, int pos) {
+        return pos == patterns.length(line) - 1;
+    }
+
+    private int tripLength(int t) {
+        return patterns.length(patterns.patternOf(t));
+    }
+
+    private int stopAt(int t, int pos) {
+        return patterns.stopAt(patterns.patternOf(t), pos);
+    }
+
+    /**
+     * Correspondances d'un trajet : génération puis élagage (demi-tours et
+     * correspondances n'améliorant aucune arrivée).
+     */
+    private Transfers computeTransfers(int t, int[] tauA) {
+        Transfers out = new Transfers();
+        List<Integer> touched = new ArrayList<>();
+        int line = patterns.patternOf(t);
+
+        for (int i = patterns.length(line) - 1; i >= 1; i--) {
+            int p = patterns.stopAt(line, i);
+            int a = patterns.departure(t, i);
+            improve(tauA, touched, p, a);
+            for (int w = 0; w < walkTo[p].length; w++)
+                improve(tauA, touched, walkTo[p][w], a + walkEdge[p][w].getTravelTimeSec());
+
+            for (int w = -1; w < walkTo[p].length; w++) {
+                int q = w < 0 ? p : walkTo[p][w];
+                Edge via = w < 0 ? null : walkEdge[p][w];
+                int ready = w < 0 ? a : a + via.getTravelTimeSec();
+                for (int x = stopLineOffset[q]; x < stopLineOffset[q + 1]; x++) {
+                    int l = stopLineLine[x], j = stopLinePos[x];
+                    if (isLastStop(l, j)) continue;
+                    int u = patterns.earliestTrip(l, j, ready);
+                    if (u < 0) continue;
+                    // rester dans le trajet (ou un trajet plus tardif de la même ligne) n'est jamais pire
+                    if (l == line && u >= t && j >= i) continue;
+                    // demi-tour : on pouvait descendre un arrêt plus tôt
+                    if (via == null && patterns.stopAt(l, j + 1) == patterns.stopAt(line, i - 1)
+                            && patterns.departure(t, i - 1) <= patterns.departure(u, j + 1)) continue;
+
+                    boolean keep = false;
+                    for (int k = j + 1; k < patterns.length(l); k++) {
+                        int r = patterns.stopAt(l, k);
+                        int b = patterns.departure(u, k);
+                        keep |= improve(tauA, touched, r, b);
+                        for (int y = 0; y < walkTo[r].length; y++)
+                            keep |= improve(tauA, touched, walkTo[r][y], b + walkEdge[r][y].getTravelTimeSec());
+                    }
+                    if (keep) out.add(i, u, j, via);
+                }
+            }
+        }
+        for (int s : touched) tauA[s] = INF;
+        return out;
+    }
+
+    private static boolean improve(int[] tau, List<Integer> touched, int stop, int time) {
+        if (time >= tau[stop]) return false;
+        if (tau[stop] == INF) touched.add(stop);
+        tau[stop] = time;
+        return true;
+    }
+
+    /**
+     * Correspondances d'un trajet, en tableaux extensibles.
+     */
+    private static final class Transfers {
+        int size;
+        int[] fromPos = new int[8];
+        int[] toTrip = new int[8];
+        int[] toPos = new int[8];
+        Edge[] edge = new Edge[8];
+
+        void add(int from, int trip, int pos, Edge via) {
+            if (size == fromPos.length) {
+                fromPos = Arrays.copyOf(fromPos, size * 2);
+                toTrip = Arrays.copyOf(toTrip, size * 2);
+                toPos = Arrays.copyOf(toPos, size * 2);
+                edge = Arrays.copyOf(edge, size * 2);
+            }
+            fromPos[size] = from;
+            toTrip[size] = trip;
+            toPos[size] = pos;
+            edge[size] = via;
+            size++;
+        }
+    }
+
+    /**
+     * État d'une requête : segments de trajets découverts, tour par tour.
+     */
+    private final class Query {
+        final int[] reached;   // première position atteinte par trajet
+        int size;
+        int[] trip = new int[64];
+        int[] board = new int[64];
+        int[] end = new int[64];
+        int[] parent = new int[64];
+        int[] parentAlight = new int[64];
+        Edge[] via = new Edge[64];
+
+        Query(int nTrips) {
+            reached = new int[nTrips];
+            Arrays.fill(reached, INF);
+        }
+
+        void enqueue(int t, int pos, int parentSeg, int alight, Edge edge) {
+            if (pos >= reached[t]) return;
+            if (size == trip.length) {
+                int n = size * 2;
+                trip = Arrays.copyOf(trip, n);
+                board = Arrays.copyOf(board, n);
+                end = Arrays.copyOf(end, n);
+                parent = Arrays.copyOf(parent, n);
+                parentAlight = Arrays.copyOf(parentAlight, n);
+                via = Arrays.copyOf(via, n);
+            }
+            trip[size] = t;
+            board[size] = pos;
+            end[size] = reached[t] == INF ? tripLength(t) - 1 : reached[t];
+            parent[size] = parentSeg;
+            parentAlight[size] = alight;
+            via[size] = edge;
+            size++;
+            // les trajets suivants de la même ligne sont aussi atteints
+            int last = patterns.endTrip(patterns.patternOf(t));
+            for (int u = t; u < last && reached[u] > pos; u++) reached[u] = pos;
+        }
+    }
+}
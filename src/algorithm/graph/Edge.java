@@ -12,13 +12,25 @@ public class Edge {
     private final int travelTimeSec;
     private final String tripId;
     private final int departureTimeSec; // -1 si marche
+    private final byte mode;            // TransportMode
+    private final int routeIndex;       // -1 si marche ou inconnu
+    private final int agencyIndex;      // -1 si marche ou inconnu
 
-    public Edge(Stop from, Stop to, int travelTimeSec, String tripId, int departureTimeSec) {
+    public Edge(Stop from, Stop to, int travelTimeSec, String tripId, int departureTimeSec,
+                byte mode, int routeIndex, int agencyIndex) {
         this.from = from;
         this.to = to;
         this.travelTimeSec = travelTimeSec;
         this.tripId = tripId;
         this.departureTimeSec = departureTimeSec;
+        this.mode = mode;
+        this.routeIndex = routeIndex;
+        this.agencyIndex = agencyIndex;
+    }
+
+    public Edge(Stop from, Stop to, int travelTimeSec, String tripId, int departureTimeSec) {
+        this(from, to, travelTimeSec, tripId, departureTimeSec,
+                tripId == null ? TransportMode.WALK : TransportMode.OTHER, -1, -1);
     }
 
     public Edge(Stop from, Stop to, int travelTimeSec) {
@@ -44,4 +56,32 @@ public class Edge {
     public int getDepartureTimeSec() {
         return departureTimeSec;
     }
+
+    /**
+     * @return mode de transport, voir {@link TransportMode}
+     */
+    public byte getMode() {
+        return mode;
+    }
+
+    /**
+     * @return index de la ligne dans le graphe ({@link Graph#getRoute(int)}), -1 si marche
+     */
+    public int getRouteIndex() {
+        return routeIndex;
+    }
+
+    /**
+     * @return index de la compagnie dans le graphe ({@link Graph#getAgencyName(int)}), -1 si marche
+     */
+    public int getAgencyIndex() {
+        return agencyIndex;
+    }
+
+    /**
+     * @return vrai si l'arête est une liaison à pied
+     */
+    public boolean isWalk() {
+        return mode == TransportMode.WALK;
+    }
 }
\ No newline at end of file
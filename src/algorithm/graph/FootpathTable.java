@@ -0,0 +1,332 @@
+package algorithm.graph;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Fermeture transitive des marches : pour chaque arrêt, durée de marche minimale
+ * vers tous les arrêts joignables à pied dans un rayon donné, en enchaînant les
+ * arcs de marche directs du graphe.
+ * <p>
+ * Une recherche bornée (Dijkstra sur les seuls arcs de marche) est lancée
+ * depuis chaque arrêt, en parallèle. Le résultat est stocké en CSR : les
+ * voisins de l'arrêt {@code s} sont les positions {@code [first(s), end(s))}
+ * de {@code to} et {@code sec}, triées par indice d'arrêt.
+ * <p>
+ * La table peut être enregistrée dans un fichier de cache, relu au démarrage
+ * suivant tant que les arrêts, les marches directes et le rayon sont inchangés
+ * (empreinte vérifiée à la lecture).
+ */
+public final class FootpathTable {
+    private static final int MAGIC = 0x46505442;     // "FPTB"
+    private static final int VERSION = 2;
+    private static final double DEFAULT_WALKING_SPEED_MPS = 1.4;
+
+    private final long fingerprint;
+    private final int maxSec;
+    private final int[] offset;
+    private final int[] to;
+    private final int[] sec;
+
+    private FootpathTable(long fingerprint, int maxSec, int[] offset, int[] to, int[] sec) {
+        this.fingerprint = fingerprint;
+        this.maxSec = maxSec;
+        this.offset = offset;
+        this.to = to;
+        this.sec = sec;
+    }
+
+    /**
+     * Calcule la fermeture des marches du graphe.
+     *
+     * @param graph        graphe dont les arcs de marche directs sont enchaînés
+     * @param radiusMeters distance de marche maximale, convertie en durée à 1,4 m/s
+     * @return table des marches
+     */
+    public static FootpathTable compute(Graph graph, double radiusMeters) {
+        return compute(graph, radiusMeters, DEFAULT_WALKING_SPEED_MPS);
+    }
+
+    /**
+     * @param walkingSpeedMps vitesse de marche convertissant le rayon en durée, en m/s
+     */
+    public static FootpathTable compute(Graph graph, double radiusMeters, double walkingSpeedMps) {
+        int n = graph.stopCount();
+        int maxSec = maxSec(radiusMeters, walkingSpeedMps);
+        int[][] rows = new int[n][];
+        ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(() -> new Scratch(n));
+        IntStream.range(0, n).parallel().forEach(s -> rows[s] = scratch.get().closure(graph, s, maxSec));
+
+        // Ligne de l'arrêt s : paires (arrêt, durée) à plat
+        int[] offset = new int[n + 1];
+        for (int s = 0; s < n; s++) offset[s + 1] = offset[s] + rows[s].length / 2;
+        int[] to = new int[offset[n]];
+        int[] sec = new int[offset[n]];
+        IntStream.range(0, n).parallel().forEach(s -> {
+            for (int k = 0, i = offset[s]; k < rows[s].length; k += 2, i++) {
+                to[i] = rows[s][k];
+                sec[i] = rows[s][k + 1];
+            }
+        });
+        return new FootpathTable(fingerprint(graph, maxSec), maxSec, offset, to, sec);
+    }
+
+    /**
+     * Relit la table depuis le fichier de cache si elle correspond au graphe,
+     * sinon la calcule et l'enregistre. Un cache illisible ou impossible à écrire
+     * n'empêche pas le calcul.
+     *
+     * @param cacheFile fichier de cache
+     * @return table des marches, rayon converti en durée à 1,4 m/s
+     */
+    public static FootpathTable cached(Graph graph, double radiusMeters, Path cacheFile) {
+        return cached(graph, radiusMeters, DEFAULT_WALKING_SPEED_MPS, cacheFile);
+    }
+
+    /**
+     * @param walkingSpeedMps vitesse de marche, la même pour l'empreinte attendue et pour le calcul
+     */
+    public static FootpathTable cached(Graph graph, double radiusMeters, double walkingSpeedMps, Path cacheFile) {
+        int maxSec = maxSec(radiusMeters, walkingSpeedMps);
+        long expected = fingerprint(graph, maxSec);
+        try {
+            FootpathTable table = load(cacheFile, expected, maxSec, graph.stopCount());
+            if (table != null) return table;
+        } catch (IOException e) {
+            System.err.println("Cache des marches illisible (" + e.getMessage() + "), recalcul.");
+        }
+        FootpathTable table = compute(graph, radiusMeters, walkingSpeedMps);
+        try {
+            table.save(cacheFile);
+        } catch (IOException e) {
+            System.err.println("Cache des marches non enregistré : " + e.getMessage());
+        }
+        return table;
+    }
+
+    /**
+     * Les longueurs et les indices lus sont vérifiés avant toute allocation,
+     * les durées ensuite : un fichier tronqué ou corrompu donne null, pas une
+     * exception.
+     *
+     * @param expected  empreinte attendue (arrêts, marches directes, rayon)
+     * @param maxSec    durée de marche maximale attendue, en secondes
+     * @param stopCount nombre d'arrêts du graphe
+     * @return table lue, null si le fichier n'existe pas, ne correspond pas ou est incohérent
+     */
+    public static FootpathTable load(Path file, long expected, int maxSec, int stopCount) throws IOException {
+        if (!Files.isRegularFile(file)) return null;
+        long maxInts = Files.size(file) / Integer.BYTES;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || in.readLong() != expected) return null;
+            if (in.readInt() != maxSec) return null;
+            int[] offset = readInts(in, stopCount + 1, stopCount + 1);
+            if (offset == null || offset[0] != 0) return null;
+            for (int s = 0; s < stopCount; s++) {
+                if (offset[s + 1] < offset[s]) return null;
+            }
+            int size = offset[stopCount];
+            if (size > maxInts) return null;
+            int[] to = readInts(in, size, size);
+            int[] sec = readInts(in, size, size);
+            if (to == null || sec == null) return null;
+            for (int w : to) {
+                if (w < 0 || w >= stopCount) return null;
+            }
+            for (int d : sec) {
+                if (d < 0 || d > maxSec) return null;
+            }
+            return new FootpathTable(expected, maxSec, offset, to, sec);
+        } catch (EOFException e) {
+            return null; // fichier tronqué
+        }
+    }
+
+    public void save(Path file) throws IOException {
+        if (file.getParent() != null) Files.createDirectories(file.getParent());
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(fingerprint);
+            out.writeInt(maxSec);
+            writeInts(out, offset);
+            writeInts(out, to);
+            writeInts(out, sec);
+        }
+    }
+
+    /**
+     * @return nombre d'arrêts
+     */
+    public int stopCount() {
+        return offset.length - 1;
+    }
+
+    /**
+     * @return durée de marche maximale de la table (rayon converti), en secondes
+     */
+    public int maxSec() {
+        return maxSec;
+    }
+
+    /**
+     * @return empreinte des données dont la table a été calculée (voir {@link #load})
+     */
+    public long fingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * @return nombre total de marches stockées
+     */
+    public int size() {
+        return to.length;
+    }
+
+    public int first(int stop) {
+        return offset[stop];
+    }
+
+    public int end(int stop) {
+        return offset[stop + 1];
+    }
+
+    /**
+     * @return indice de l'arrêt d'arrivée de la marche en position {@code i}
+     */
+    public int to(int i) {
+        return to[i];
+    }
+
+    /**
+     * @return durée minimale de la marche en position {@code i}, en secondes
+     */
+    public int sec(int i) {
+        return sec[i];
+    }
+
+    //Rayon converti en durée de marche maximale
+    private static int maxSec(double radiusMeters, double walkingSpeedMps) {
+        return (int) Math.ceil(radiusMeters / walkingSpeedMps);
+    }
+
+    /**
+     * Empreinte des données dont dépend la table : identifiants des arrêts,
+     * marches directes et durée maximale.
+     */
+    static long fingerprint(Graph graph, int maxSec) {
+        long h = 1125899906842597L ^ graph.stopCount();
+        h = 31 * h + maxSec;
+        for (int s = 0; s < graph.stopCount(); s++) {
+            h = 31 * h + graph.getStop(s).getStopId().hashCode();
+            for (int i = graph.firstEdge(s, TransportMode.WALK); i < graph.endEdge(s, TransportMode.WALK); i++) {
+                Edge e = graph.getEdge(i);
+                h = 31 * h + graph.indexOf(e.getTo());
+                h = 31 * h + e.getTravelTimeSec();
+            }
+        }
+        return h;
+    }
+
+    //Tableau précédé de sa longueur ; null si la longueur n'est pas dans [min, max]
+    private static int[] readInts(DataInputStream in, int min, int max) throws IOException {
+        int length = in.readInt();
+        if (length < min || length > max) return null;
+        int[] a = new int[length];
+        for (int i = 0; i < a.length; i++) a[i] = in.readInt();
+        return a;
+    }
+
+    private static void writeInts(DataOutputStream out, int[] a) throws IOException {
+        out.writeInt(a.length);
+        for (int v : a) out.writeInt(v);
+    }
+
+    /**
+     * Tableaux de travail d'un thread, réinitialisés seulement sur les arrêts touchés.
+     */
+    private static final class Scratch {
+        final int[] dist;
+        int[] touched = new int[64];
+        long[] heap = new long[64];
+        int touchedCount;
+        int heapSize;
+
+        Scratch(int n) {
+            dist = new int[n];
+            Arrays.fill(dist, Integer.MAX_VALUE);
+        }
+
+        //Dijkstra borné sur les arcs de marche ; paires (arrêt, durée) triées par arrêt, source exclue
+        int[] closure(Graph graph, int source, int maxSec) {
+            touchedCount = 0;
+            heapSize = 0;
+            touch(source, 0);
+            while (heapSize > 0) {
+                long top = pop();
+                int d = (int) (top >>> 32);
+                int v = (int) top;
+                if (d > dist[v]) continue;
+                for (int i = graph.firstEdge(v, TransportMode.WALK); i < graph.endEdge(v, TransportMode.WALK); i++) {
+                    Edge e = graph.getEdge(i);
+                    int w = graph.indexOf(e.getTo());
+                    int dw = d + e.getTravelTimeSec();
+                    if (dw <= maxSec && dw < dist[w]) touch(w, dw);
+                }
+            }
+
+            int[] reached = Arrays.copyOf(touched, touchedCount);
+            Arrays.sort(reached);
+            int[] row = new int[2 * (touchedCount - 1)];
+            int k = 0;
+            for (int w : reached) {
+                if (w != source) {
+                    row[k++] = w;
+                    row[k++] = dist[w];
+                }
+                dist[w] = Integer.MAX_VALUE;
+            }
+            return row;
+        }
+
+        private void touch(int v, int d) {
+            if (dist[v] == Integer.MAX_VALUE) {
+                if (touchedCount == touched.length) touched = Arrays.copyOf(touched, touchedCount * 2);
+                touched[touchedCount++] = v;
+            }
+            dist[v] = d;
+            push(((long) d << 32) | v);
+        }
+
+        private void push(long x) {
+            if (heapSize == heap.length) heap = Arrays.copyOf(heap, heapSize * 2);
+            int i = heapSize++;
+            while (i > 0) {
+                int p = (i - 1) >>> 1;
+                if (heap[p] <= x) break;
+                heap[i] = heap[p];
+                i = p;
+            }
+            heap[i] = x;
+        }
+
+        private long pop() {
+            long top = heap[0];
+            long x = heap[--heapSize];
+            int i = 0;
+            while (true) {
+                int c = 2 * i + 1;
+                if (c >= heapSize) break;
+                if (c + 1 < heapSize && heap[c + 1] < heap[c]) c++;
+                if (heap[c] >= x) break;
+                heap[i] = heap[c];
+                i = c;
+            }
+            heap[i] = x;
+            return top;
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package algorithm.graph;
+
+import data.Stop;
+
+/**
+ * Calculs de distances entre arrêts, sur des tableaux primitifs (une colonne
+ * par coordonnée) avec radians et cosinus précalculés.
+ * <p>
+ * Trois niveaux de précision :
+ * <ul>
+ *   <li>{@link #distance} : haversine, exacte sur la sphère ;</li>
+ *   <li>{@link #approxDistance} : projection équirectangulaire, sans trigonométrie
+ *       par paire, pour les filtres où l'exactitude n'est pas nécessaire ;</li>
+ *   <li>{@link #lowerBound} : corde entre les points sur la sphère, jamais plus
+ *       longue que la distance réelle, pour les heuristiques admissibles.</li>
+ * </ul>
+ * Les évaluations groupées ({@link #distances}) sont des boucles simples sur
+ * les tableaux, sans objet ni appel virtuel ; sinus et arc tangente restent
+ * calculés par paire. Pour en limiter le nombre, filtrer d'abord les
+ * candidats avec {@link #approxDistance}.
+ */
+public final class GeoKernel {
+    /** Rayon terrestre moyen, en mètres. */
+    public static final double EARTH_RADIUS_METERS = 6_371_000;
+
+    private final double[] lat;     // radians
+    private final double[] lon;     // radians
+    private final double[] cosLat;
+    private final double[] x;       // point sur la sphère unité
+    private final double[] y;
+    private final double[] z;
+
+    private GeoKernel(int n) {
+        lat = new double[n];
+        lon = new double[n];
+        cosLat = new double[n];
+        x = new double[n];
+        y = new double[n];
+        z = new double[n];
+    }
+
+    /**
+     * @param stops arrêts, l'indice dans le tableau est l'indice utilisé par le noyau
+     * @return noyau sur les coordonnées des arrêts
+     */
+    public static GeoKernel of(Stop[] stops) {
+        GeoKernel k = new GeoKernel(stops.length);
+        for (int i = 0; i < stops.length; i++) {
+            double phi = Math.toRadians(stops[i].getLat());
+            double lambda = Math.toRadians(stops[i].getLon());
+            k.lat[i] = phi;
+            k.lon[i] = lambda;
+            k.cosLat[i] = Math.cos(phi);
+            k.x[i] = k.cosLat[i] * Math.cos(lambda);
+            k.y[i] = k.cosLat[i] * Math.sin(lambda);
+            k.z[i] = Math.sin(phi);
+        }
+        return k;
+    }
+
+    /**
+     * @return nombre de points
+     */
+    public int size() {
+        return lat.length;
+    }
+
+    /**
+     * @return distance à vol d'oiseau (haversine) entre les points i et j, en mètres
+     */
+    public double distance(int i, int j) {
+        double sinDphi = Math.sin((lat[j] - lat[i]) / 2);
+        double sinDlambda = Math.sin((lon[j] - lon[i]) / 2);
+        double h = sinDphi * sinDphi + cosLat[i] * cosLat[j] * sinDlambda * sinDlambda;
+        return 2 * EARTH_RADIUS_METERS * Math.atan2(Math.sqrt(h), Math.sqrt(1 - h));
+    }
+
+    /**
+     * Distances haversine du point i vers {@code count} points candidats.
+     *
+     * @param i          point de départ
+     * @param candidates indices des points
+     * @param count      nombre de candidats lus
+     * @param out        distances en mètres, même ordre que les candidats
+     */
+    public void distances(int i, int[] candidates, int count, double[] out) {
+        double lat0 = lat[i], lon0 = lon[i], cos0 = cosLat[i];
+        for (int k = 0; k < count; k++) {
+            int j = candidates[k];
+            double sinDphi = Math.sin((lat[j] - lat0) / 2);
+            double sinDlambda = Math.sin((lon[j] - lon0) / 2);
+            double h = sinDphi * sinDphi + cos0 * cosLat[j] * sinDlambda * sinDlambda;
+            out[k] = 2 * EARTH_RADIUS_METERS * Math.atan2(Math.sqrt(h), Math.sqrt(1 - h));
+        }
+    }
+
+    /**
+     * Projection équirectangulaire : précise à mieux que 0,1 % sur quelques kilomètres.
+     *
+     * @return distance approchée entre les points i et j, en mètres
+     */
+    public double approxDistance(int i, int j) {
+        double dx = (lon[j] - lon[i]) * 0.5 * (cosLat[i] + cosLat[j]);
+        double dy = lat[j] - lat[i];
+        return EARTH_RADIUS_METERS * Math.sqrt(dx * dx + dy * dy);
+    }
+
+    /**
+     * Longueur de la corde entre les points : minorant de la distance réelle, sans trigonométrie.
+     *
+     * @return minorant de la distance entre les points i et j, en mètres
+     */
+    public double lowerBound(int i, int j) {
+        double dx = x[j] - x[i], dy = y[j] - y[i], dz = z[j] - z[i];
+        return EARTH_RADIUS_METERS * Math.sqrt(dx * dx + dy * dy + dz * dz);
+    }
+
+    /**
+     * @return distance haversine entre deux arrêts quelconques, en mètres
+     */
+    public static double haversine(Stop a, Stop b) {
+        double phi1 = Math.toRadians(a.getLat());
+        double phi2 = Math.toRadians(b.getLat());
+        double sinDphi = Math.sin((phi2 - phi1) / 2);
+        double sinDlambda = Math.sin(Math.toRadians(b.getLon() - a.getLon()) / 2);
+        double h = sinDphi * sinDphi + Math.cos(phi1) * Math.cos(phi2) * sinDlambda * sinDlambda;
+        return 2 * EARTH_RADIUS_METERS * Math.atan2(Math.sqrt(h), Math.sqrt(1 - h));
+    }
+}
@@ -1,46 +1,411 @@
 package algorithm.graph;
 
+import data.Route;
 import data.Stop;
-import java.io.*;
-import java.nio.file.Files;
-import java.nio.file.Path;
 import java.util.*;
 
 /**
- * Représente un graphe dirigé statique d'arrêts
+ * Représente un graphe dirigé statique d'arrêts.
+ * <p>
+ * Stockage compact (CSR) : tous les arcs sont dans un seul tableau, rangés par
+ * arrêt de départ puis par mode. {@code offsets[s * COUNT + m]} est le début des
+ * arcs du mode {@code m} partant de l'arrêt d'indice {@code s}.
+ * <p>
+ * L'adjacence inverse (arcs entrants, même découpage par mode) est construite
+ * à la première demande, pour les recherches arrière.
  */
 public class Graph {
-    private final Map<Stop, List<Edge>> adj;
+    private static final int DAY = 24 * 3600;
 
-    public Graph(int initialCapacity) {
-        this.adj = new LinkedHashMap<>(initialCapacity);
+    private final Stop[] stops;
+    private final Map<Stop, Integer> indexOf;
+    private final Edge[] edges;
+    private final int[] offsets;          // stops.length * TransportMode.COUNT + 1 valeurs
+    private Route[] routes = new Route[0];
+    private String[] agencies = new String[0];
+    private Map<Stop, List<Edge>> adjacencyMap;
+    private Edge[] inEdges;               // adjacence inverse, construite à la demande
+    private volatile int[] inOffsets;
+    private volatile GeoKernel geo;
+    private volatile double maxSpeedMps;  // 0 : pas encore calculée
+    private double transferSpeedMps;      // 0 : aucune correspondance interne (graphe des quais)
+    private Stop[] platforms;             // null : chaque arrêt est son propre quai
+    private Map<Stop, Integer> platformIndexOf;
+    private boolean footpathsClosed;      // marches fermées transitivement (FootpathTable)
+    private final GraphView[] views = new GraphView[GraphView.ALL_MODES + 1];
+
+    /**
+     * @param stops   arrêts, l'indice dans le tableau est l'indice de l'arrêt
+     * @param edges   arcs rangés par arrêt de départ puis par mode
+     * @param offsets début de chaque plage (arrêt, mode), plus la fin du tableau
+     */
+    Graph(Stop[] stops, Edge[] edges, int[] offsets) {
+        this(stops, edges, offsets, new HashMap<>(stops.length * 2));
+        for (int i = 0; i < stops.length; i++) indexOf.put(stops[i], i);
+    }
+
+    /**
+     * @param indexOf indice de nœud de chaque arrêt ; plusieurs arrêts (quais) peuvent
+     *                partager le même nœud (station)
+     */
+    Graph(Stop[] stops, Edge[] edges, int[] offsets, Map<Stop, Integer> indexOf) {
+        this.stops = stops;
+        this.edges = edges;
+        this.offsets = offsets;
+        this.indexOf = indexOf;
+    }
+
+    /**
+     * @return nombre d'arrêts
+     */
+    public int stopCount() {
+        return stops.length;
+    }
+
+    /**
+     * @param index indice de l'arrêt
+     * @return l'arrêt
+     */
+    public Stop getStop(int index) {
+        return stops[index];
+    }
+
+    /**
+     * @param stop arrêt (ou quai d'une station)
+     * @return indice du nœud de l'arrêt, -1 s'il n'appartient pas au graphe
+     */
+    public int indexOf(Stop stop) {
+        Integer i = indexOf.get(stop);
+        return i == null ? -1 : i;
+    }
+
+    /**
+     * @return nombre total d'arcs
+     */
+    public int edgeCount() {
+        return edges.length;
+    }
+
+    /**
+     * @param i position dans le tableau des arcs
+     * @return l'arc
+     */
+    public Edge getEdge(int i) {
+        return edges[i];
+    }
+
+    /**
+     * @param stop indice de l'arrêt
+     * @return position du premier arc partant de l'arrêt
+     */
+    public int firstEdge(int stop) {
+        return offsets[stop * TransportMode.COUNT];
+    }
+
+    /**
+     * @param stop indice de l'arrêt
+     * @return position suivant le dernier arc partant de l'arrêt
+     */
+    public int endEdge(int stop) {
+        return offsets[(stop + 1) * TransportMode.COUNT];
+    }
+
+    /**
+     * @param stop indice de l'arrêt
+     * @param mode mode de transport
+     * @return position du premier arc de ce mode partant de l'arrêt
+     */
+    public int firstEdge(int stop, byte mode) {
+        return offsets[stop * TransportMode.COUNT + mode];
+    }
+
+    /**
+     * @param stop indice de l'arrêt
+     * @param mode mode de transport
+     * @return position suivant le dernier arc de ce mode partant de l'arrêt
+     */
+    public int endEdge(int stop, byte mode) {
+        return offsets[stop * TransportMode.COUNT + mode + 1];
+    }
+
+    /**
+     * Les arcs du mode {@code mode} arrivant à l'arrêt sont les positions
+     * {@code [firstInEdge(stop, mode), endInEdge(stop, mode))}, lues par {@link #getInEdge(int)}.
+     *
+     * @param stop indice de l'arrêt d'arrivée
+     * @param mode mode de transport
+     * @return position du premier arc entrant de ce mode
+     */
+    public int firstInEdge(int stop, byte mode) {
+        return reverse()[stop * TransportMode.COUNT + mode];
+    }
+
+    /**
+     * @param stop indice de l'arrêt d'arrivée
+     * @param mode mode de transport
+     * @return position suivant le dernier arc entrant de ce mode
+     */
+    public int endInEdge(int stop, byte mode) {
+        return reverse()[stop * TransportMode.COUNT + mode + 1];
+    }
+
+    /**
+     * @param i position dans le tableau des arcs entrants
+     * @return l'arc
+     */
+    public Edge getInEdge(int i) {
+        return inEdges[i];
+    }
+
+    /**
+     * Construit l'adjacence inverse (tri par comptage, les arcs ne sont pas copiés).
+     *
+     * @return début de chaque plage (arrêt d'arrivée, mode)
+     */
+    private int[] reverse() {
+        int[] in = inOffsets;
+        if (in != null) return in;
+        synchronized (this) {
+            if (inOffsets == null) {
+                final int modes = TransportMode.COUNT;
+                int[] to = new int[edges.length];
+                in = new int[stops.length * modes + 1];
+                for (int i = 0; i < edges.length; i++) {
+                    to[i] = indexOf(edges[i].getTo()) * modes + edges[i].getMode();
+                    in[to[i] + 1]++;
+                }
+                for (int k = 0; k < stops.length * modes; k++) in[k + 1] += in[k];
+                Edge[] rev = new Edge[edges.length];
+                int[] cursor = Arrays.copyOf(in, stops.length * modes);
+                for (int i = 0; i < edges.length; i++) rev[cursor[to[i]]++] = edges[i];
+                inEdges = rev;
+                inOffsets = in;
+            }
+            return inOffsets;
+        }
+    }
+
+    /**
+     * @param stop arrêt
+     * @return nombre d'arcs sortants
+     */
+    public int outDegree(Stop stop) {
+        int s = indexOf(stop);
+        return s < 0 ? 0 : endEdge(s) - firstEdge(s);
+    }
+
+    /**
+     * @param stop arrêt
+     * @return nombre de départs horaires (arcs sortants hors marche)
+     */
+    public int departureCount(Stop stop) {
+        int s = indexOf(stop);
+        return s < 0 ? 0 : endEdge(s) - endEdge(s, TransportMode.WALK);
+    }
+
+    /**
+     * Adjacence sous forme de table (vues en lecture seule sur le tableau des arcs).
+     * Pratique mais plus lente que l'accès par indices.
+     */
+    public synchronized Map<Stop, List<Edge>> getAdjacencyMap() {
+        if (adjacencyMap == null) {
+            Map<Stop, List<Edge>> m = new LinkedHashMap<>(stops.length * 2);
+            List<Edge> all = Arrays.asList(edges);
+            for (int s = 0; s < stops.length; s++) {
+                m.put(stops[s], Collections.unmodifiableList(all.subList(firstEdge(s), endEdge(s))));
+            }
+            adjacencyMap = Collections.unmodifiableMap(m);
+        }
+        return adjacencyMap;
+    }
+
+    /**
+     * Vue du graphe restreinte aux modes du masque (bit {@code m} pour {@link TransportMode} m).
+     * Les vues sont mises en cache : une seule instance par masque, partageable entre threads.
+     *
+     * @param modeMask masque des modes autorisés
+     * @return vue filtrée
+     */
+    public synchronized GraphView view(int modeMask) {
+        modeMask &= GraphView.ALL_MODES;
+        GraphView v = views[modeMask];
+        if (v == null) views[modeMask] = v = new GraphView(this, modeMask);
+        return v;
+    }
+
+    /**
+     * Temps de correspondance entre deux quais d'une même station : marche de
+     * l'un à l'autre, calculée pour chaque paire.
+     *
+     * @param arrivedAt  quai d'arrivée (arrêt d'arrivée de l'arc précédent)
+     * @param departFrom quai de départ (arrêt de départ de l'arc suivant)
+     * @return temps minimal pour changer de trajet (0 sur le même quai ou hors stations)
+     */
+    public int transferTimeSec(Stop arrivedAt, Stop departFrom) {
+        if (transferSpeedMps == 0 || arrivedAt == departFrom) return 0;
+        return (int) Math.ceil(haversine(arrivedAt, departFrom) / transferSpeedMps);
+    }
+
+    void setTransferSpeed(double walkingSpeedMps) {
+        this.transferSpeedMps = walkingSpeedMps;
+    }
+
+    /**
+     * La correspondance dépendant du quai, les recherches sur un graphe de
+     * stations distinguent leurs étiquettes par quai et non par nœud.
+     *
+     * @return nombre de quais (arrêts d'origine), égal à {@link #stopCount()} hors stations
+     */
+    public int platformCount() {
+        return platforms == null ? stops.length : platforms.length;
+    }
+
+    /**
+     * @return indice du quai, -1 s'il est hors du graphe
+     */
+    public int platformIndexOf(Stop platform) {
+        if (platforms == null) return indexOf(platform);
+        Integer i = platformIndexOf.get(platform);
+        return i == null ? -1 : i;
+    }
+
+    /**
+     * @return quai d'indice {@code index}
+     */
+    public Stop getPlatform(int index) {
+        return platforms == null ? stops[index] : platforms[index];
+    }
+
+    void setPlatforms(Stop[] platforms, Map<Stop, Integer> platformIndexOf) {
+        this.platforms = platforms;
+        this.platformIndexOf = platformIndexOf;
+    }
+
+    /**
+     * @return vrai si les arcs de marche sont la fermeture d'une {@link FootpathTable} :
+     * une marche suivie d'une autre marche est alors inutile
+     */
+    public boolean footpathsClosed() {
+        return footpathsClosed;
+    }
+
+    void setFootpathsClosed(boolean footpathsClosed) {
+        this.footpathsClosed = footpathsClosed;
+    }
+
+    void copyRouteTable(Graph other) {
+        setRouteTable(other.routes, other.agencies);
+    }
+
+    void setRouteTable(Route[] routes, String[] agencies) {
+        this.routes = routes;
+        this.agencies = agencies;
+    }
+
+    /**
+     * @param routeIndex index renvoyé par {@link Edge#getRouteIndex()}
+     * @return la ligne, ou null pour une marche
+     */
+    public Route getRoute(int routeIndex) {
+        return routeIndex < 0 ? null : routes[routeIndex];
+    }
+
+    /**
+     * @param agencyIndex index renvoyé par {@link Edge#getAgencyIndex()}
+     * @return nom de la compagnie, ou null pour une marche
+     */
+    public String getAgencyName(int agencyIndex) {
+        return agencyIndex < 0 ? null : agencies[agencyIndex];
     }
 
-    public void addStop(Stop stop) {
-        adj.putIfAbsent(stop, new ArrayList<>());
+    /**
+     * Noyau de distances sur les coordonnées des nœuds, construit à la première demande.
+     *
+     * @return noyau, indices identiques à ceux du graphe
+     */
+    public GeoKernel geo() {
+        GeoKernel k = geo;
+        if (k == null) {
+            synchronized (this) {
+                if (geo == null) geo = GeoKernel.of(stops);
+                k = geo;
+            }
+        }
+        return k;
     }
 
-    public void addEdge(Edge edge) {
-        List<Edge> list = adj.get(edge.getFrom());
-        if (list == null) throw new IllegalArgumentException("Stop non reconnu: " + edge.getFrom());
-        list.add(edge);
+    /**
+     * Vitesse maximale observée sur les arcs : corde entre les nœuds divisée par
+     * la durée, calculée à la première demande ; sert de borne à l'heuristique A*.
+     * <p>
+     * Les horaires arrondis à la minute donnent des arcs de durée nulle : sur
+     * chaque trajet, une suite d'arcs de durée nulle est fusionnée avec l'arc de
+     * durée positive qui la suit (ou qui la précède en fin de trajet), et la
+     * vitesse est mesurée sur le segment fusionné, depuis chacun de ses arrêts.
+     * Aucun arc n'est écarté : des coordonnées erronées affaiblissent
+     * l'heuristique sans la rendre fausse. L'estimation est un minorant pour tout
+     * trajet dont le reste dure plus que zéro seconde.
+     *
+     * @return vitesse en m/s, 1 si le graphe n'a aucun arc de durée positive
+     */
+    public double maxSpeedMps() {
+        double v = maxSpeedMps;
+        if (v == 0) {
+            GeoKernel k = geo();
+            v = 1;
+            Map<String, List<Edge>> trips = new HashMap<>();
+            for (Edge e : edges) {
+                if (e.getTripId() != null) {
+                    trips.computeIfAbsent(e.getTripId(), t -> new ArrayList<>()).add(e);
+                } else if (e.getTravelTimeSec() > 0) {
+                    v = Math.max(v, k.lowerBound(indexOf(e.getFrom()), indexOf(e.getTo())) / e.getTravelTimeSec());
+                }
+            }
+            for (List<Edge> hops : trips.values()) v = Math.max(v, tripSpeedMps(k, hops));
+            maxSpeedMps = v; // calcul idempotent : une course entre threads est sans effet
+        }
+        return v;
     }
 
-    public Map<Stop, List<Edge>> getAdjacencyMap() {
-        return Collections.unmodifiableMap(adj);
+    // Vitesse max d'un trajet, suites d'arcs de durée nulle fusionnées avec l'arc positif voisin
+    private double tripSpeedMps(GeoKernel k, List<Edge> hops) {
+        hops.sort(Comparator.comparingInt(Edge::getDepartureTimeSec));
+        for (int i = 1; i < hops.size(); i++) { // trajet passant minuit : la chaîne reprend au premier arc
+            if (hops.get(i - 1).getTo() != hops.get(i).getFrom()) {
+                Collections.rotate(hops, -i);
+                break;
+            }
+        }
+        int m = hops.size();
+        int[] node = new int[m + 1];
+        int[] dep = new int[m];     // départ de l'arrêt i
+        int[] arr = new int[m + 1]; // arrivée à l'arrêt i (arr[0] inutilisé)
+        for (int i = 0; i < m; i++) {
+            Edge e = hops.get(i);
+            node[i] = indexOf(e.getFrom());
+            dep[i] = e.getDepartureTimeSec();
+            while (i > 0 && dep[i] < arr[i]) dep[i] += DAY;
+            arr[i + 1] = dep[i] + e.getTravelTimeSec();
+        }
+        node[m] = indexOf(hops.get(m - 1).getTo());
+        double v = 0;
+        for (int i = 0; i < m; i++) {
+            int j = i + 1;
+            while (j < m && arr[j] == dep[i]) j++;
+            if (arr[j] > dep[i]) {
+                v = Math.max(v, k.lowerBound(node[i], node[j]) / (arr[j] - dep[i]));
+                continue;
+            }
+            // fin de trajet de durée nulle : rattachée au dernier arc positif qui précède
+            int b = i - 1;
+            while (b >= 0 && arr[i] == dep[b]) b--;
+            if (b < 0) continue;
+            for (int x = i + 1; x <= m; x++) v = Math.max(v, k.lowerBound(node[b], node[x]) / (arr[x] - dep[b]));
+        }
+        return v;
     }
 
     public double haversine(Stop a, Stop b) {
-        final double R = 6_371_000;
-        double phi1 = Math.toRadians(a.getLat());
-        double lambda1 = Math.toRadians(a.getLon());
-        double phi2 = Math.toRadians(b.getLat());
-        double lambda2 = Math.toRadians(b.getLon());
-        double dphi = phi2 - phi1;
-        double dlambda = lambda2 - lambda1;
-        double sinDphi = Math.sin(dphi/2);
-        double sinDlambda = Math.sin(dlambda/2);
-        double h = sinDphi*sinDphi + Math.cos(phi1)*Math.cos(phi2)*sinDlambda*sinDlambda;
-        return 2*R*Math.atan2(Math.sqrt(h), Math.sqrt(1-h));
+        return GeoKernel.haversine(a, b);
     }
 }
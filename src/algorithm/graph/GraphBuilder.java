@@ -1,19 +1,36 @@
 package algorithm.graph;
 
+import data.Company;
+import data.Route;
 import data.Stop;
 import data.StopTime;
+import data.Trip;
+import utils.CSVReader;
 
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 import java.util.stream.*;
 
 /**
  * Construction d'un graphe statique pour un réseau de transports en commun,
  * en tenant compte des trajets (stopTimes) et des liaisons piétonnes.
  * Intègre les horaires pour les arêtes timetabled (avec departureTimeSec).
+ * <p>
+ * Construction en deux passes parallèles : comptage des degrés sortants par
+ * (arrêt, mode), somme préfixe, puis écriture directe de chaque arête dans sa
+ * case du tableau final, sans liste intermédiaire.
  */
 public class GraphBuilder {
     private static final double DEFAULT_WALKING_THRESHOLD_METERS = 500.0;
     private static final double DEFAULT_WALKING_SPEED_MPS        = 1.4;
+    private static final int STREAM_QUEUE_CAPACITY               = 1024;
+    private static final long STREAM_POLL_MS                     = 100;
+    private static final double APPROX_MARGIN                    = 1.01; // marge du filtre équirectangulaire
+    private static final Comparator<Edge> TIMETABLE_ORDER =
+            Comparator.comparingInt(Edge::getDepartureTimeSec).thenComparing(Edge::getTripId);
 
     public static Graph buildStaticGraph(List<Stop> stops, List<StopTime> stopTimes) {
         return buildStaticGraph(
@@ -24,114 +41,600 @@ public class GraphBuilder {
         );
     }
 
+    /**
+     * Construit le graphe en attachant à chaque arête son mode, sa ligne et sa compagnie.
+     *
+     * @param companies compagnies dont proviennent les lignes et trajets
+     */
+    public static Graph buildStaticGraph(List<Stop> stops, List<StopTime> stopTimes, List<Company> companies) {
+        return buildStaticGraph(
+                stops,
+                stopTimes,
+                companies,
+                DEFAULT_WALKING_THRESHOLD_METERS,
+                DEFAULT_WALKING_SPEED_MPS
+        );
+    }
+
     public static Graph buildStaticGraph(
             List<Stop> stops,
             List<StopTime> stopTimes,
             double walkingThresholdMeters,
             double walkingSpeedMps
     ) {
-        //Déduplication des arrêts par stopId
+        return buildStaticGraph(stops, stopTimes, List.of(), walkingThresholdMeters, walkingSpeedMps);
+    }
+
+    /**
+     * Construit le graphe et relève en même temps les trajets pour les horaires par motif.
+     *
+     * @param patterns relevé des trajets (arrêts dans l'ordre des stop_sequence)
+     */
+    public static Graph buildStaticGraph(List<Stop> stops, List<StopTime> stopTimes, List<Company> companies,
+                                         PatternTimetable.Builder patterns) {
+        return buildStaticGraph(stops, stopTimes, companies, DEFAULT_WALKING_THRESHOLD_METERS,
+                DEFAULT_WALKING_SPEED_MPS, patterns);
+    }
+
+    public static Graph buildStaticGraph(
+            List<Stop> stops,
+            List<StopTime> stopTimes,
+            List<Company> companies,
+            double walkingThresholdMeters,
+            double walkingSpeedMps
+    ) {
+        return buildStaticGraph(stops, stopTimes, companies, walkingThresholdMeters, walkingSpeedMps, null);
+    }
+
+    private static Graph buildStaticGraph(
+            List<Stop> stops,
+            List<StopTime> stopTimes,
+            List<Company> companies,
+            double walkingThresholdMeters,
+            double walkingSpeedMps,
+            PatternTimetable.Builder patterns
+    ) {
+        Stop[] stopArr = uniqueStops(stops);
+        int n = stopArr.length;
+        Map<String, Integer> indexById = indexById(stopArr);
+        RouteTable routes = RouteTable.of(companies);
+
+        Map<String, List<StopTime>> byTrip = stopTimes.parallelStream()
+                .collect(Collectors.groupingByConcurrent(StopTime::getTripId));
+        List<Map.Entry<String, List<StopTime>>> trips = new ArrayList<>(byTrip.entrySet());
+
+        //Passe 1 : degré sortant par (arrêt, mode)
+        final int modes = TransportMode.COUNT;
+        AtomicIntegerArray degree = new AtomicIntegerArray(n * modes);
+        trips.parallelStream().forEach(entry -> {
+            List<StopTime> seq = entry.getValue();
+            seq.sort(Comparator.comparingInt(StopTime::getStopSequence));
+            byte mode = routes.modeOf(entry.getKey());
+            for (int i = 0; i + 1 < seq.size(); i++) {
+                degree.incrementAndGet(stopIndex(indexById, seq.get(i).getStopId()) * modes + mode);
+            }
+        });
+
+        WalkNeighbours walks = WalkNeighbours.compute(stopArr, walkingThresholdMeters, walkingSpeedMps, degree,
+                new AtomicBoolean());
+
+        //Somme préfixe : début de chaque plage (arrêt, mode)
+        int[] offsets = prefixSum(degree);
+        Edge[] edges = new Edge[offsets[n * modes]];
+
+        //Passe 2 : écriture des arêtes timetabled directement dans leur case
+        AtomicIntegerArray cursor = new AtomicIntegerArray(Arrays.copyOf(offsets, n * modes));
+        trips.parallelStream().forEach(entry -> {
+            String tripId = entry.getKey(); // instance partagée par toutes les arêtes du trajet
+            List<StopTime> seq = entry.getValue();
+            int route = routes.routeOf(tripId);
+            byte mode = routes.modeOf(tripId);
+            int agency = routes.agencyOf(route);
+            int[] tripStops = new int[seq.size()];
+            int[] tripTimes = new int[seq.size()];
+            for (int i = 0; i < seq.size(); i++) {
+                tripStops[i] = stopIndex(indexById, seq.get(i).getStopId());
+                tripTimes[i] = seq.get(i).getDepartureTime().toSecondOfDay();
+            }
+            if (patterns != null) patterns.add(tripId, tripStops, tripTimes, mode, route, agency);
+            for (int i = 0; i + 1 < seq.size(); i++) {
+                int prevSec = tripTimes[i];
+                int delta = tripTimes[i + 1] - prevSec;
+                if (delta < 0) delta += 24 * 3600;
+                int from = tripStops[i];
+                int to = tripStops[i + 1];
+                edges[cursor.getAndIncrement(from * modes + mode)] =
+                        new Edge(stopArr[from], stopArr[to], delta, tripId, prevSec, mode, route, agency);
+            }
+        });
+
+        return finish(stopArr, edges, offsets, walks, routes);
+    }
+
+    public static Graph buildStreaming(List<Stop> stops, List<Company> companies, List<Path> stopTimeFiles)
+            throws InterruptedException, ExecutionException {
+        return buildStreaming(stops, companies, stopTimeFiles,
+                DEFAULT_WALKING_THRESHOLD_METERS, DEFAULT_WALKING_SPEED_MPS, null);
+    }
+
+    /**
+     * Construit le graphe en flux et relève en même temps les trajets pour les horaires par motif.
+     *
+     * @param patterns relevé des trajets (arrêts dans l'ordre des stop_sequence)
+     */
+    public static Graph buildStreaming(List<Stop> stops, List<Company> companies, List<Path> stopTimeFiles,
+                                       PatternTimetable.Builder patterns)
+            throws InterruptedException, ExecutionException {
+        return buildStreaming(stops, companies, stopTimeFiles,
+                DEFAULT_WALKING_THRESHOLD_METERS, DEFAULT_WALKING_SPEED_MPS, patterns);
+    }
+
+    /**
+     * Construit le graphe en lisant les fichiers stop_times.csv en flux, sans
+     * jamais matérialiser l'ensemble des horaires.
+     * <p>
+     * Un thread par fichier analyse les lignes et regroupe celles d'un même
+     * trajet (les fichiers doivent être triés par trip_id) ; les trajets
+     * passent par une file bornée vers des ouvriers qui créent les arêtes,
+     * pendant que les liaisons piétonnes sont calculées en parallèle. Seules
+     * les arêtes finales restent en mémoire, puis sont rangées dans le tableau CSR.
+     * <p>
+     * Le premier échec d'une tâche est remonté sans attendre les autres (un
+     * lecteur peut être bloqué sur une file pleine) : toutes les tâches, calcul
+     * des marches compris, sont alors interrompues.
+     *
+     * @param stops         arrêts de toutes les compagnies
+     * @param companies     compagnies (lignes et trajets, sans stopTimes)
+     * @param stopTimeFiles fichiers stop_times.csv à lire
+     * @return graphe
+     * @throws ExecutionException si un fichier est illisible, référence un arrêt inconnu
+     *                            ou n'est pas trié par trip_id ({@link IllegalStateException})
+     */
+    public static Graph buildStreaming(
+            List<Stop> stops,
+            List<Company> companies,
+            List<Path> stopTimeFiles,
+            double walkingThresholdMeters,
+            double walkingSpeedMps
+    ) throws InterruptedException, ExecutionException {
+        return buildStreaming(stops, companies, stopTimeFiles, walkingThresholdMeters, walkingSpeedMps, null);
+    }
+
+    private static Graph buildStreaming(
+            List<Stop> stops,
+            List<Company> companies,
+            List<Path> stopTimeFiles,
+            double walkingThresholdMeters,
+            double walkingSpeedMps,
+            PatternTimetable.Builder patterns
+    ) throws InterruptedException, ExecutionException {
+        Stop[] stopArr = uniqueStops(stops);
+        int n = stopArr.length;
+        Map<String, Integer> indexById = indexById(stopArr);
+        RouteTable routes = RouteTable.of(companies);
+        final int modes = TransportMode.COUNT;
+        AtomicIntegerArray degree = new AtomicIntegerArray(n * modes);
+
+        //Liaisons piétonnes calculées pendant la lecture des horaires
+        AtomicBoolean abandoned = new AtomicBoolean();
+        CompletableFuture<WalkNeighbours> walks = CompletableFuture.supplyAsync(
+                () -> WalkNeighbours.compute(stopArr, walkingThresholdMeters, walkingSpeedMps, degree, abandoned));
+
+        BlockingQueue<TripRows> queue = new ArrayBlockingQueue<>(STREAM_QUEUE_CAPACITY);
+        int workers = Math.max(1, Runtime.getRuntime().availableProcessors() - stopTimeFiles.size());
+        ExecutorService exec = Executors.newFixedThreadPool(stopTimeFiles.size() + workers);
+        List<List<Edge>> emitted = new ArrayList<>();
+        boolean read = false;
+        try {
+            //Lecture et regroupement par trajet
+            List<Future<?>> tasks = new ArrayList<>();
+            List<Future<?>> producers = new ArrayList<>();
+            for (Path file : stopTimeFiles) {
+                producers.add(exec.submit(() -> {
+                    streamTrips(file, indexById, queue);
+                    return null;
+                }));
+            }
+            tasks.addAll(producers);
+
+            //Création des arêtes
+            List<Future<List<Edge>>> consumers = new ArrayList<>();
+            for (int w = 0; w < workers; w++) {
+                consumers.add(exec.submit(() -> {
+                    List<Edge> out = new ArrayList<>();
+                    for (TripRows rows = queue.take(); rows != TripRows.END; rows = queue.take()) {
+                        rows.emit(stopArr, routes, degree, out, patterns);
+                    }
+                    return out;
+                }));
+            }
+            tasks.addAll(consumers);
+
+            for (Future<?> f : producers) await(f, tasks);
+            for (int w = 0; w < workers; w++) {
+                while (!queue.offer(TripRows.END, STREAM_POLL_MS, TimeUnit.MILLISECONDS)) rethrowFailure(tasks);
+            }
+            for (Future<List<Edge>> f : consumers) emitted.add(await(f, tasks));
+            read = true;
+        } finally {
+            exec.shutdownNow();
+            if (!read) {
+                abandoned.set(true);
+                walks.cancel(true);
+            }
+        }
+
+        WalkNeighbours walkNeighbours = walks.get();
+        int[] offsets = prefixSum(degree);
+        Edge[] edges = new Edge[offsets[n * modes]];
+        AtomicIntegerArray cursor = new AtomicIntegerArray(Arrays.copyOf(offsets, n * modes));
+        emitted.parallelStream().forEach(list -> {
+            for (Edge e : list) {
+                edges[cursor.getAndIncrement(indexById.get(e.getFrom().getStopId()) * modes + e.getMode())] = e;
+            }
+        });
+        emitted.clear();
+        return finish(stopArr, edges, offsets, walkNeighbours, routes);
+    }
+
+    //Résultat de f, en remontant dès qu'il survient l'échec de n'importe quelle tâche
+    private static <T> T await(Future<T> f, List<Future<?>> tasks) throws InterruptedException, ExecutionException {
+        while (true) {
+            try {
+                return f.get(STREAM_POLL_MS, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                rethrowFailure(tasks);
+            }
+        }
+    }
+
+    //Relance l'exception de la première tâche terminée en échec
+    private static void rethrowFailure(List<Future<?>> tasks) throws InterruptedException, ExecutionException {
+        for (Future<?> t : tasks) {
+            if (t.isDone()) t.get();
+        }
+    }
+
+    /**
+     * Lit un fichier stop_times.csv et envoie chaque trajet complet dans la file.
+     */
+    private static void streamTrips(Path file, Map<String, Integer> indexById, BlockingQueue<TripRows> queue)
+            throws java.io.IOException, InterruptedException {
+        Set<String> done = new HashSet<>();
+        TripRows[] current = {null};
+        CSVReader.forEachStopTime(file, (tripId, departureSec, stopId, sequence) -> {
+            TripRows cur = current[0];
+            if (cur == null || !cur.tripId.equals(tripId)) {
+                if (cur != null) queue.put(cur);
+                if (!done.add(tripId)) {
+                    throw new IllegalStateException(file + " n'est pas trié par trip_id (" + tripId + ")");
+                }
+                current[0] = cur = new TripRows(tripId);
+            }
+            cur.add(stopIndex(indexById, stopId), departureSec, sequence);
+        });
+        if (current[0] != null) queue.put(current[0]);
+    }
+
+    /**
+     * Dernière étape commune : arêtes de marche, tri déterministe des plages horaires, table des lignes.
+     */
+    private static Graph finish(Stop[] stopArr, Edge[] edges, int[] offsets, WalkNeighbours walks, RouteTable routes) {
+        final int modes = TransportMode.COUNT;
+        //Arêtes de marche : chaque arrêt remplit sa propre plage, puis tri déterministe des plages horaires
+        IntStream.range(0, stopArr.length).parallel().forEach(i -> {
+            int slot = offsets[i * modes + TransportMode.WALK];
+            for (int k = 0; k < walks.to[i].length; k++) {
+                edges[slot++] = new Edge(stopArr[i], stopArr[walks.to[i][k]], walks.sec[i][k]);
+            }
+            for (int m = TransportMode.WALK + 1; m < modes; m++) {
+                Arrays.sort(edges, offsets[i * modes + m], offsets[i * modes + m + 1], TIMETABLE_ORDER);
+            }
+        });
+
+        Graph g = new Graph(stopArr, edges, offsets);
+        g.setRouteTable(routes.routes.toArray(new Route[0]), routes.agencies.toArray(new String[0]));
+        return g;
+    }
+
+    /**
+     * Sous-graphe d'un graphe existant : arrêts et arcs choisis, arcs partagés.
+     *
+     * @param parent graphe d'origine (table des lignes et compagnies reprise)
+     * @param stops  arrêts du sous-graphe
+     * @param edges  arcs dont les deux extrémités sont dans {@code stops}
+     * @return graphe CSR indépendant du graphe d'origine
+     */
+    public static Graph subgraph(Graph parent, List<Stop> stops, List<Edge> edges) {
+        return subgraph(parent, stops, edges, parent.footpathsClosed());
+    }
+
+    /**
+     * Sous-graphe dont les arcs de marche sont déjà fermés (ou non) indépendamment du graphe d'origine.
+     *
+     * @param parent          graphe dont la table des lignes et compagnies est reprise
+     * @param footpathsClosed vrai si les arcs de marche de {@code edges} viennent d'une {@link FootpathTable}
+     */
+    public static Graph subgraph(Graph parent, List<Stop> stops, List<Edge> edges, boolean footpathsClosed) {
+        Stop[] nodes = stops.toArray(new Stop[0]);
+        Map<Stop, Integer> indexOf = new HashMap<>(nodes.length * 2);
+        for (int i = 0; i < nodes.length; i++) indexOf.put(nodes[i], i);
+        Graph g = fromEdges(nodes, indexOf, edges);
+        g.copyRouteTable(parent);
+        g.setFootpathsClosed(footpathsClosed);
+        return g;
+    }
+
+    /**
+     * Remplace les arcs de marche directs par la fermeture de la table : une seule
+     * marche relie deux arrêts du rayon, les recherches n'enchaînent plus de marches.
+     * Les arcs horaires sont partagés avec le graphe d'origine.
+     *
+     * @param graph graphe d'origine (celui dont la table a été calculée)
+     * @param table fermeture des marches du graphe
+     * @return nouveau graphe, marqué {@link Graph#footpathsClosed()}
+     */
+    public static Graph withFootpaths(Graph graph, FootpathTable table) {
+        final int modes = TransportMode.COUNT;
+        int n = graph.stopCount();
+        if (table.stopCount() != n) throw new IllegalArgumentException("Table des marches d'un autre graphe");
+        Stop[] stopArr = new Stop[n];
+        int[] offsets = new int[n * modes + 1];
+        for (int s = 0; s < n; s++) {
+            stopArr[s] = graph.getStop(s);
+            offsets[s * modes + TransportMode.WALK + 1] = table.end(s) - table.first(s);
+            for (int m = TransportMode.WALK + 1; m < modes; m++)
+                offsets[s * modes + m + 1] = graph.endEdge(s, (byte) m) - graph.firstEdge(s, (byte) m);
+        }
+        for (int k = 0; k < n * modes; k++) offsets[k + 1] += offsets[k];
+
+        Edge[] edges = new Edge[offsets[n * modes]];
+        IntStream.range(0, n).parallel().forEach(s -> {
+            int c = offsets[s * modes + TransportMode.WALK];
+            for (int i = table.first(s); i < table.end(s); i++)
+                edges[c++] = new Edge(stopArr[s], stopArr[table.to(i)], table.sec(i));
+            for (int i = graph.endEdge(s, TransportMode.WALK); i < graph.endEdge(s); i++)
+                edges[c++] = graph.getEdge(i);
+        });
+
+        Graph g = new Graph(stopArr, edges, offsets);
+        g.copyRouteTable(graph);
+        g.setFootpathsClosed(true);
+        return g;
+    }
+
+    /**
+     * Assemble un graphe à partir d'arêtes existantes (partagées, non copiées).
+     *
+     * @param nodes   nœuds du graphe
+     * @param indexOf indice de nœud de chaque arrêt apparaissant dans les arêtes
+     * @param edges   arêtes, rangées par nœud de départ selon {@code indexOf}
+     * @return graphe CSR
+     */
+    static Graph fromEdges(Stop[] nodes, Map<Stop, Integer> indexOf, List<Edge> edges) {
+        final int modes = TransportMode.COUNT;
+        int[] offsets = new int[nodes.length * modes + 1];
+        for (Edge e : edges) offsets[indexOf.get(e.getFrom()) * modes + e.getMode() + 1]++;
+        for (int k = 0; k < nodes.length * modes; k++) offsets[k + 1] += offsets[k];
+        Edge[] arr = new Edge[edges.size()];
+        int[] cursor = Arrays.copyOf(offsets, nodes.length * modes);
+        for (Edge e : edges) arr[cursor[indexOf.get(e.getFrom()) * modes + e.getMode()]++] = e;
+        IntStream.range(0, nodes.length).parallel().forEach(i -> {
+            for (int m = TransportMode.WALK + 1; m < modes; m++) {
+                Arrays.sort(arr, offsets[i * modes + m], offsets[i * modes + m + 1], TIMETABLE_ORDER);
+            }
+        });
+        return new Graph(nodes, arr, offsets, indexOf);
+    }
+
+    //Déduplication des arrêts par stopId, indice dense par arrêt
+    private static Stop[] uniqueStops(List<Stop> stops) {
         Map<String, Stop> uniqueById = new LinkedHashMap<>();
         for (Stop s : stops) {
             uniqueById.putIfAbsent(s.getStopId(), s);
         }
-        List<Stop> uniqueStops = new ArrayList<>(uniqueById.values());
-
-        //Initialisation du graphe et mapping stopId -> Stop
-        Graph g = new Graph(uniqueStops.size());
-        Map<String, Stop> stopById = new HashMap<>(uniqueStops.size());
-        for (Stop s : uniqueStops) {
-            g.addStop(s);
-            stopById.put(s.getStopId(), s);
-        }
-
-        //Génération parallèle des arêtes timetabled (avec horaires)
-        Map<String, List<StopTime>> byTrip = stopTimes.stream()
-                .collect(Collectors.groupingBy(StopTime::getTripId));
-
-        List<Edge> timedEdges = byTrip.values()
-                .parallelStream()
-                .flatMap(seq -> {
-                    seq.sort(Comparator.comparingInt(StopTime::getStopSequence));
-                    String prevId = null;
-                    int prevSec = 0;
-                    Stream.Builder<Edge> builder = Stream.builder();
-                    for (StopTime st : seq) {
-                        String curId = st.getStopId();
-                        int curSec = st.getDepartureTime().toSecondOfDay();
-                        if (prevId != null) {
-                            int delta = curSec - prevSec;
-                            if (delta < 0) delta += 24 * 3600;
-                            Stop from = stopById.get(prevId);
-                            Stop to   = stopById.get(curId);
-                            builder.add(new Edge(from, to, delta, st.getTripId(), prevSec));
-                        }
-                        prevId  = curId;
-                        prevSec = curSec;
+        return uniqueById.values().toArray(new Stop[0]);
+    }
+
+    private static Map<String, Integer> indexById(Stop[] stopArr) {
+        Map<String, Integer> indexById = new HashMap<>(stopArr.length * 2);
+        for (int i = 0; i < stopArr.length; i++) {
+            indexById.put(stopArr[i].getStopId(), i);
+        }
+        return indexById;
+    }
+
+    private static int[] prefixSum(AtomicIntegerArray degree) {
+        int[] offsets = new int[degree.length() + 1];
+        for (int k = 0; k < degree.length(); k++) {
+            offsets[k + 1] = offsets[k] + degree.get(k);
+        }
+        return offsets;
+    }
+
+    private static int stopIndex(Map<String, Integer> indexById, String stopId) {
+        Integer i = indexById.get(stopId);
+        if (i == null) throw new IllegalArgumentException("Stop non reconnu: " + stopId);
+        return i;
+    }
+
+    /**
+     * Table des lignes et compagnies : attributs précalculés des arêtes.
+     */
+    private static final class RouteTable {
+        final List<Route> routes = new ArrayList<>();
+        final List<String> agencies = new ArrayList<>();
+        final List<Integer> routeAgency = new ArrayList<>();
+        final Map<String, Integer> routeIndexByTrip = new HashMap<>();
+        byte[] modeOfRoute;
+
+        static RouteTable of(List<Company> companies) {
+            RouteTable t = new RouteTable();
+            Map<String, Integer> routeIndexById = new HashMap<>();
+            for (Company c : companies) {
+                int agency = t.agencies.size();
+                t.agencies.add(c.getName());
+                for (Route r : c.getRoutes()) {
+                    if (routeIndexById.putIfAbsent(r.getRouteId(), t.routes.size()) == null) {
+                        t.routes.add(r);
+                        t.routeAgency.add(agency);
                     }
-                    return builder.build();
-                })
-                .collect(Collectors.toList());
-        timedEdges.forEach(g::addEdge);
-
-        double deltaLat  = walkingThresholdMeters / 111_000.0;
-        double avgLatRad = uniqueStops.stream()
-                .mapToDouble(Stop::getLat).average().orElse(0.0) * Math.PI / 180.0;
-        double deltaLon  = walkingThresholdMeters / (111_000.0 * Math.cos(avgLatRad));
-
-        Map<Cell, List<Stop>> grid = new HashMap<>();
-        for (Stop s : uniqueStops) {
-            int x = (int) (s.getLon() / deltaLon);
-            int y = (int) (s.getLat() / deltaLat);
-            Cell c = new Cell(x, y);
-            grid.computeIfAbsent(c, k -> new ArrayList<>()).add(s);
-        }
-
-        //Génération parallèle des arêtes
-        List<Edge> walkEdges = uniqueStops.parallelStream()
-                .flatMap(s -> {
-                    int bx = (int) (s.getLon() / deltaLon);
-                    int by = (int) (s.getLat() / deltaLat);
-                    Stream.Builder<Edge> builder = Stream.builder();
-                    for (int dx = -1; dx <= 1; dx++) {
-                        for (int dy = -1; dy <= 1; dy++) {
-                            List<Stop> bucket = grid.get(new Cell(bx + dx, by + dy));
-                            if (bucket == null) continue;
-                            for (Stop t : bucket) {
-                                if (s == t) continue;
-                                double dist = haversine(s, t);
-                                if (dist <= walkingThresholdMeters) {
-                                    int walkTime = (int) Math.ceil(dist / walkingSpeedMps);
-                                    builder.add(new Edge(s, t, walkTime));
-                                }
-                            }
+                }
+                for (Trip trip : c.getTrips()) {
+                    Integer route = routeIndexById.get(trip.routeId());
+                    if (route != null) t.routeIndexByTrip.put(trip.tripId(), route);
+                }
+            }
+            t.modeOfRoute = new byte[t.routes.size()];
+            for (int i = 0; i < t.modeOfRoute.length; i++) {
+                byte mode = TransportMode.fromRouteType(t.routes.get(i).getType());
+                t.modeOfRoute[i] = mode == TransportMode.WALK ? TransportMode.OTHER : mode;
+            }
+            return t;
+        }
+
+        int routeOf(String tripId) {
+            return routeIndexByTrip.getOrDefault(tripId, -1);
+        }
+
+        byte modeOf(String tripId) {
+            int route = routeOf(tripId);
+            return route < 0 ? TransportMode.OTHER : modeOfRoute[route];
+        }
+
+        int agencyOf(int route) {
+            return route < 0 ? -1 : routeAgency.get(route);
+        }
+    }
+
+    /**
+     * Voisins à pied de chaque arrêt (indices et durées), calculés en parallèle sur une grille.
+     */
+    private static final class WalkNeighbours {
+        final int[][] to;
+        final int[][] sec;
+
+        private WalkNeighbours(int n) {
+            to = new int[n][];
+            sec = new int[n][];
+        }
+
+        //abandoned : mis à vrai si le résultat n'est plus attendu, les arrêts restants sont alors sautés
+        static WalkNeighbours compute(Stop[] stopArr, double walkingThresholdMeters, double walkingSpeedMps,
+                                      AtomicIntegerArray degree, AtomicBoolean abandoned) {
+            int n = stopArr.length;
+            double deltaLat  = walkingThresholdMeters / 111_000.0;
+            double avgLatRad = Arrays.stream(stopArr)
+                    .mapToDouble(Stop::getLat).average().orElse(0.0) * Math.PI / 180.0;
+            double deltaLon  = walkingThresholdMeters / (111_000.0 * Math.cos(avgLatRad));
+
+            Map<Cell, List<Integer>> grid = new HashMap<>();
+            for (int i = 0; i < n; i++) {
+                int x = (int) (stopArr[i].getLon() / deltaLon);
+                int y = (int) (stopArr[i].getLat() / deltaLat);
+                grid.computeIfAbsent(new Cell(x, y), k -> new ArrayList<>()).add(i);
+            }
+
+            GeoKernel geo = GeoKernel.of(stopArr);
+            WalkNeighbours w = new WalkNeighbours(n);
+            IntStream.range(0, n).parallel().forEach(i -> {
+                if (abandoned.get()) return;
+                Stop s = stopArr[i];
+                int bx = (int) (s.getLon() / deltaLon);
+                int by = (int) (s.getLat() / deltaLat);
+                //candidats des 9 cellules voisines retenus par la distance approchée (avec marge),
+                //puis distances exactes évaluées en un seul lot
+                double prefilter = walkingThresholdMeters * APPROX_MARGIN;
+                int[] candidates = new int[32];
+                int count = 0;
+                for (int dx = -1; dx <= 1; dx++) {
+                    for (int dy = -1; dy <= 1; dy++) {
+                        List<Integer> bucket = grid.get(new Cell(bx + dx, by + dy));
+                        if (bucket == null) continue;
+                        for (int j : bucket) {
+                            if (i == j || geo.approxDistance(i, j) > prefilter) continue;
+                            if (count == candidates.length) candidates = Arrays.copyOf(candidates, count * 2);
+                            candidates[count++] = j;
                         }
                     }
-                    return builder.build();
-                })
-                .collect(Collectors.toList());
-        walkEdges.forEach(g::addEdge);
-
-        return g;
+                }
+                double[] dist = new double[count];
+                geo.distances(i, candidates, count, dist);
+                int[] to = new int[count];
+                int[] sec = new int[count];
+                int kept = 0;
+                for (int k = 0; k < count; k++) {
+                    if (dist[k] <= walkingThresholdMeters) {
+                        to[kept] = candidates[k];
+                        sec[kept] = (int) Math.ceil(dist[k] / walkingSpeedMps);
+                        kept++;
+                    }
+                }
+                w.to[i] = Arrays.copyOf(to, kept);
+                w.sec[i] = Arrays.copyOf(sec, kept);
+                degree.addAndGet(i * TransportMode.COUNT + TransportMode.WALK, kept);
+            });
+            return w;
+        }
     }
 
     /**
-     * Calcul de la distance à vol d'oiseau entre deux arrêts.
+     * Lignes d'un trajet lues en flux (indices d'arrêts et heures en secondes).
      */
-    private static double haversine(Stop a, Stop b) {
-        final double R = 6_371_000;
-        double phi1    = Math.toRadians(a.getLat());
-        double lambda1 = Math.toRadians(a.getLon());
-        double phi2    = Math.toRadians(b.getLat());
-        double lambda2 = Math.toRadians(b.getLon());
-        double dphi    = phi2 - phi1;
-        double dlambda = lambda2 - lambda1;
-        double sinDphi    = Math.sin(dphi / 2);
-        double sinDlambda = Math.sin(dlambda / 2);
-        double h = sinDphi * sinDphi
-                + Math.cos(phi1) * Math.cos(phi2)
-                * sinDlambda * sinDlambda;
-        return 2 * R * Math.atan2(Math.sqrt(h), Math.sqrt(1 - h));
+    private static final class TripRows {
+        static final TripRows END = new TripRows(null);
+
+        final String tripId;
+        int size;
+        int[] stop = new int[16];
+        int[] time = new int[16];
+        int[] seq = new int[16];
+
+        TripRows(String tripId) {
+            this.tripId = tripId;
+        }
+
+        void add(int stopIndex, int timeSec, int sequence) {
+            if (size == stop.length) {
+                stop = Arrays.copyOf(stop, size * 2);
+                time = Arrays.copyOf(time, size * 2);
+                seq = Arrays.copyOf(seq, size * 2);
+            }
+            stop[size] = stopIndex;
+            time[size] = timeSec;
+            seq[size] = sequence;
+            size++;
+        }
+
+        /**
+         * Trie par stop_sequence, puis crée les arêtes du trajet, compte les degrés
+         * sortants et relève le trajet si {@code patterns} n'est pas null.
+         */
+        void emit(Stop[] stopArr, RouteTable routes, AtomicIntegerArray degree, List<Edge> out,
+                  PatternTimetable.Builder patterns) {
+            Integer[] order = new Integer[size];
+            for (int i = 0; i < size; i++) order[i] = i;
+            Arrays.sort(order, Comparator.comparingInt(i -> seq[i]));
+            int route = routes.routeOf(tripId);
+            byte mode = routes.modeOf(tripId);
+            int agency = routes.agencyOf(route);
+            if (patterns != null) {
+                int[] tripStops = new int[size];
+                int[] tripTimes = new int[size];
+                for (int k = 0; k < size; k++) {
+                    tripStops[k] = stop[order[k]];
+                    tripTimes[k] = time[order[k]];
+                }
+                patterns.add(tripId, tripStops, tripTimes, mode, route, agency);
+            }
+            for (int k = 0; k + 1 < size; k++) {
+                int a = order[k], b = order[k + 1];
+                int delta = time[b] - time[a];
+                if (delta < 0) delta += 24 * 3600;
+                out.add(new Edge(stopArr[stop[a]], stopArr[stop[b]], delta, tripId, time[a], mode, route, agency));
+                degree.incrementAndGet(stop[a] * TransportMode.COUNT + mode);
+            }
+        }
     }
 
     private record Cell(int x, int y) {}
@@ -0,0 +1,114 @@
+package algorithm.graph;
+
+/**
+ * Vue d'un {@link Graph} restreinte à certains modes de transport.
+ * <p>
+ * Les arcs de chaque arrêt sont rangés par mode : une vue ne parcourt que les
+ * plages des modes autorisés, les arcs exclus ne sont jamais visités.
+ * Une vue ne contient aucune donnée par arc et peut être partagée entre threads.
+ */
+public final class GraphView {
+    /** Masque autorisant tous les modes. */
+    public static final int ALL_MODES = (1 << TransportMode.COUNT) - 1;
+
+    private final Graph graph;
+    private final int modeMask;
+    private final byte[] modes;
+
+    GraphView(Graph graph, int modeMask) {
+        this.graph = graph;
+        this.modeMask = modeMask;
+        this.modes = new byte[Integer.bitCount(modeMask)];
+        int k = 0;
+        for (byte m = 0; m < TransportMode.COUNT; m++) {
+            if ((modeMask & (1 << m)) != 0) modes[k++] = m;
+        }
+    }
+
+    /**
+     * @return graphe complet sous-jacent
+     */
+    public Graph getGraph() {
+        return graph;
+    }
+
+    /**
+     * @return masque des modes autorisés
+     */
+    public int getModeMask() {
+        return modeMask;
+    }
+
+    /**
+     * @param mode mode de transport
+     * @return vrai si la vue contient les arcs de ce mode
+     */
+    public boolean allows(byte mode) {
+        return (modeMask & (1 << mode)) != 0;
+    }
+
+    /**
+     * @return modes autorisés, dans l'ordre des plages (copie)
+     */
+    public byte[] modes() {
+        return modes.clone();
+    }
+
+    /**
+     * Les arcs du mode {@code mode} partant de l'arrêt sont les positions
+     * {@code [firstEdge(stop, mode), endEdge(stop, mode))}, lues par {@link #getEdge(int)}.
+     *
+     * @param stop indice de l'arrêt
+     * @param mode mode autorisé
+     * @return position du premier arc
+     */
+    public int firstEdge(int stop, byte mode) {
+        return graph.firstEdge(stop, mode);
+    }
+
+    /**
+     * @param stop indice de l'arrêt
+     * @param mode mode autorisé
+     * @return position suivant le dernier arc
+     */
+    public int endEdge(int stop, byte mode) {
+        return graph.endEdge(stop, mode);
+    }
+
+    /**
+     * @param i position de l'arc
+     * @return l'arc
+     */
+    public Edge getEdge(int i) {
+        return graph.getEdge(i);
+    }
+
+    /**
+     * Arcs entrants, pour les recherches arrière : positions
+     * {@code [firstInEdge(stop, mode), endInEdge(stop, mode))}, lues par {@link #getInEdge(int)}.
+     *
+     * @param stop indice de l'arrêt d'arrivée
+     * @param mode mode autorisé
+     * @return position du premier arc entrant
+     */
+    public int firstInEdge(int stop, byte mode) {
+        return graph.firstInEdge(stop, mode);
+    }
+
+    /**
+     * @param stop indice de l'arrêt d'arrivée
+     * @param mode mode autorisé
+     * @return position suivant le dernier arc entrant
+     */
+    public int endInEdge(int stop, byte mode) {
+        return graph.endInEdge(stop, mode);
+    }
+
+    /**
+     * @param i position de l'arc entrant
+     * @return l'arc
+     */
+    public Edge getInEdge(int i) {
+        return graph.getInEdge(i);
+    }
+}
@@ -0,0 +1,321 @@
+package algorithm.graph;
+
+import data.Stop;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Horaires par motif de ligne (« route pattern »), pour le moteur trip-based.
+ * <p>
+ * Les trajets d'une même ligne qui desservent la même suite d'arrêts sans se
+ * dépasser forment un motif : la suite d'arrêts est stockée une seule fois, et
+ * chaque trajet n'est plus qu'une heure de départ plus une ligne de la matrice
+ * trajet × arrêt des décalages (en secondes depuis le premier arrêt). Les
+ * lignes identiques de cette matrice (même profil de temps de parcours à des
+ * heures différentes, cas le plus fréquent) sont partagées.
+ * <p>
+ * Les trajets sont relevés par {@link GraphBuilder} pendant la lecture des
+ * stop_times, dans l'ordre des stop_sequence ({@link Builder}) : aucun trajet
+ * n'est reconstitué à partir des arêtes ni écarté. Le GTFS chargé ne donne
+ * qu'une heure par arrêt : l'heure de départ d'une position est aussi l'heure
+ * d'arrivée à cette position. Les heures sont rendues croissantes le long d'un
+ * trajet (un trajet passant minuit dépasse 24 h).
+ * <p>
+ * Ce n'est pas une économie de mémoire pour le programme : le {@link Graph}
+ * garde ses arêtes par trajet pour A* et les autres moteurs, la table s'y
+ * ajoute. Elle remplace seulement les heures par position que le moteur
+ * trip-based copiait pour lui seul.
+ */
+public final class PatternTimetable {
+    private static final int DAY = 24 * 3600;
+
+    private final Stop[] stops;             // arrêts du graphe, par indice de nœud
+
+    // Motifs
+    private final int[] patternStopOffset;  // début de la suite d'arrêts du motif
+    private final int[] patternStops;       // indices de nœud du graphe
+    private final int[] patternFirstTrip;   // trajets du motif p : [patternFirstTrip[p], patternFirstTrip[p + 1])
+    private final byte[] patternMode;
+    private final int[] patternRoute;
+    private final int[] patternAgency;
+
+    // Trajets, triés par motif puis par heure de départ
+    private final int[] tripPattern;
+    private final String[] tripIds;
+    private final int[] tripStart;          // heure de départ au premier arrêt
+    private final int[] tripProfile;        // ligne de la matrice des décalages
+    private final int[][] profiles;         // décalages depuis le départ, par position
+
+    private PatternTimetable(Stop[] stops, List<List<RawTrip>> patterns) {
+        this.stops = stops;
+        int p = patterns.size();
+        patternStopOffset = new int[p + 1];
+        patternFirstTrip = new int[p + 1];
+        patternMode = new byte[p];
+        patternRoute = new int[p];
+        patternAgency = new int[p];
+        for (int i = 0; i < p; i++) {
+            patternStopOffset[i + 1] = patternStopOffset[i] + patterns.get(i).get(0).stops.length;
+            patternFirstTrip[i + 1] = patternFirstTrip[i] + patterns.get(i).size();
+        }
+        patternStops = new int[patternStopOffset[p]];
+        int nTrips = patternFirstTrip[p];
+        tripPattern = new int[nTrips];
+        tripIds = new String[nTrips];
+        tripStart = new int[nTrips];
+        tripProfile = new int[nTrips];
+
+        Map<Profile, Integer> profileIndex = new HashMap<>();
+        List<int[]> profileList = new ArrayList<>();
+        for (int i = 0; i < p; i++) {
+            List<RawTrip> trips = patterns.get(i);
+            RawTrip first = trips.get(0);
+            System.arraycopy(first.stops, 0, patternStops, patternStopOffset[i], first.stops.length);
+            patternMode[i] = first.mode;
+            patternRoute[i] = first.route;
+            patternAgency[i] = first.agency;
+            int t = patternFirstTrip[i];
+            for (RawTrip trip : trips) {
+                int[] offsets = new int[trip.times.length];
+                for (int k = 0; k < offsets.length; k++) offsets[k] = trip.times[k] - trip.times[0];
+                Integer profile = profileIndex.putIfAbsent(new Profile(offsets), profileList.size());
+                if (profile == null) {
+                    profile = profileList.size();
+                    profileList.add(offsets);
+                }
+                tripPattern[t] = i;
+                tripIds[t] = trip.tripId;
+                tripStart[t] = trip.times[0];
+                tripProfile[t] = profile;
+                t++;
+            }
+        }
+        profiles = profileList.toArray(new int[0][]);
+    }
+
+    /**
+     * Relevé des trajets pendant la construction du graphe, utilisable depuis
+     * plusieurs threads. {@link GraphBuilder} y ajoute chaque trajet, arrêts
+     * triés par stop_sequence ; {@link #build(Graph)} forme ensuite les motifs.
+     */
+    public static final class Builder {
+        private final Queue<RawTrip> trips = new ConcurrentLinkedQueue<>();
+
+        /**
+         * @param stops indices de nœud, dans l'ordre des stop_sequence
+         * @param times heures de passage (modulo 24 h), dans le même ordre
+         */
+        void add(String tripId, int[] stops, int[] times, byte mode, int route, int agency) {
+            if (stops.length < 2) return; // aucun arc, comme dans le graphe
+            int[] increasing = new int[times.length];
+            increasing[0] = times[0];
+            for (int i = 1; i < times.length; i++)
+                increasing[i] = increasing[i - 1] + Math.floorMod(times[i] - times[i - 1], DAY);
+            trips.add(new RawTrip(tripId, stops, increasing, mode, route, agency));
+        }
+
+        /**
+         * Regroupe les trajets relevés en motifs.
+         *
+         * @param graph graphe construit en même temps que le relevé (ou sa fermeture des marches)
+         * @return horaires par motif
+         */
+        public PatternTimetable build(Graph graph) {
+            Stop[] stops = new Stop[graph.stopCount()];
+            for (int s = 0; s < stops.length; s++) stops[s] = graph.getStop(s);
+
+            // Regroupement par (ligne, suite d'arrêts), puis découpage en motifs sans dépassement
+            Map<List<Integer>, List<RawTrip>> bySequence = new HashMap<>();
+            for (RawTrip t : trips) {
+                for (int s : t.stops)
+                    if (s >= stops.length) throw new IllegalArgumentException("Trajets relevés sur un autre graphe");
+                bySequence.computeIfAbsent(t.key(), k -> new ArrayList<>()).add(t);
+            }
+            List<List<RawTrip>> patterns = new ArrayList<>();
+            for (List<RawTrip> group : bySequence.values()) {
+                group.sort(Comparator.comparingInt((RawTrip t) -> t.times[0]).thenComparing(t -> t.tripId));
+                List<List<RawTrip>> split = new ArrayList<>();
+                for (RawTrip t : group) {
+                    List<RawTrip> target = null;
+                    for (List<RawTrip> l : split) {
+                        if (!t.overtakes(l.get(l.size() - 1))) {
+                            target = l;
+                            break;
+                        }
+                    }
+                    if (target == null) split.add(target = new ArrayList<>());
+                    target.add(t);
+                }
+                patterns.addAll(split);
+            }
+            return new PatternTimetable(stops, patterns);
+        }
+    }
+
+    /**
+     * @return nombre de motifs
+     */
+    public int patternCount() {
+        return patternMode.length;
+    }
+
+    /**
+     * @return nombre total de trajets
+     */
+    public int tripCount() {
+        return tripIds.length;
+    }
+
+    /**
+     * @return nombre de profils de temps de parcours distincts (lignes de la matrice)
+     */
+    public int profileCount() {
+        return profiles.length;
+    }
+
+    /**
+     * @return nombre d'arêtes horaires représentées (un arc par arrêt consécutif par trajet)
+     */
+    public int hopCount() {
+        int n = 0;
+        for (int t = 0; t < tripIds.length; t++) n += length(tripPattern[t]) - 1;
+        return n;
+    }
+
+    /**
+     * @param pattern motif
+     * @return nombre d'arrêts du motif
+     */
+    public int length(int pattern) {
+        return patternStopOffset[pattern + 1] - patternStopOffset[pattern];
+    }
+
+    /**
+     * @param pattern motif
+     * @param pos     position dans le motif
+     * @return indice de nœud de l'arrêt dans le graphe
+     */
+    public int stopAt(int pattern, int pos) {
+        return patternStops[patternStopOffset[pattern] + pos];
+    }
+
+    /**
+     * @param pattern motif
+     * @return indice du premier trajet du motif
+     */
+    public int firstTrip(int pattern) {
+        return patternFirstTrip[pattern];
+    }
+
+    /**
+     * @param pattern motif
+     * @return indice suivant le dernier trajet du motif
+     */
+    public int endTrip(int pattern) {
+        return patternFirstTrip[pattern + 1];
+    }
+
+    /**
+     * @param trip trajet
+     * @return motif du trajet
+     */
+    public int patternOf(int trip) {
+        return tripPattern[trip];
+    }
+
+    /**
+     * @param trip trajet
+     * @return identifiant GTFS du trajet
+     */
+    public String tripId(int trip) {
+        return tripIds[trip];
+    }
+
+    /**
+     * @param trip trajet
+     * @param pos  position dans le motif
+     * @return heure (s depuis minuit, éventuellement au-delà de 24 h) de passage à la position
+     */
+    public int departure(int trip, int pos) {
+        return tripStart[trip] + profiles[tripProfile[trip]][pos];
+    }
+
+    public byte mode(int pattern) {
+        return patternMode[pattern];
+    }
+
+    public int routeIndex(int pattern) {
+        return patternRoute[pattern];
+    }
+
+    public int agencyIndex(int pattern) {
+        return patternAgency[pattern];
+    }
+
+    /**
+     * Montée par motif : premier trajet passant à la position à l'heure {@code time} ou après.
+     *
+     * @param pattern motif
+     * @param pos     position de montée
+     * @param time    heure d'arrivée à l'arrêt
+     * @return indice du trajet, -1 si aucun
+     */
+    public int earliestTrip(int pattern, int pos, int time) {
+        int lo = patternFirstTrip[pattern], hi = patternFirstTrip[pattern + 1];
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (departure(mid, pos) < time) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo < patternFirstTrip[pattern + 1] ? lo : -1;
+    }
+
+    /**
+     * Matérialise l'arête horaire d'un trajet entre deux positions consécutives.
+     *
+     * @param trip trajet
+     * @param pos  position de départ (l'arête mène à {@code pos + 1})
+     * @return arête équivalente à celle du graphe
+     */
+    public Edge hop(int trip, int pos) {
+        int p = tripPattern[trip];
+        Stop from = stops[stopAt(p, pos)];
+        Stop to = stops[stopAt(p, pos + 1)];
+        int dep = departure(trip, pos);
+        return new Edge(from, to, departure(trip, pos + 1) - dep, tripIds[trip], dep % DAY,
+                patternMode[p], patternRoute[p], patternAgency[p]);
+    }
+
+    /**
+     * Trajet relevé, heures rendues croissantes.
+     */
+    private record RawTrip(String tripId, int[] stops, int[] times, byte mode, int route, int agency) {
+        List<Integer> key() {
+            List<Integer> l = new ArrayList<>(stops.length + 1);
+            l.add(route);
+            for (int s : stops) l.add(s);
+            return l;
+        }
+
+        /** Vrai si ce trajet double (ou rejoint) {@code o} à un arrêt. */
+        boolean overtakes(RawTrip o) {
+            for (int i = 0; i < times.length; i++)
+                if (times[i] < o.times[i]) return true;
+            return false;
+        }
+    }
+
+    /** Profil de décalages, comparé par contenu. */
+    private record Profile(int[] offsets) {
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Profile p && Arrays.equals(offsets, p.offsets);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(offsets);
+        }
+    }
+}
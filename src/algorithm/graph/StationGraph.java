@@ -0,0 +1,191 @@
+package algorithm.graph;
+
+import data.Stop;
+import utils.StopNameIndex;
+
+import java.util.*;
+
+/**
+ * Regroupement des arrêts physiquement confondus (quais, deux sens, même gare
+ * publiée par plusieurs compagnies) en stations.
+ * <p>
+ * Les arrêts sont parcourus dans l'ordre ; chaque arrêt pas encore placé
+ * ouvre une station et en devient le centre. Un voisin à pied du centre la
+ * rejoint s'il porte le même nom (accents et casse ignorés) à moins de
+ * {@code sameNameRadius} mètres, ou s'il est à moins de {@code anyNameRadius}
+ * mètres quel que soit son nom : le diamètre d'une station est borné par deux
+ * rayons, pas de fusion de proche en proche. Deux arrêts reliés par un arc
+ * horaire restent dans des stations distinctes, pour ne perdre aucun arc.
+ * <p>
+ * Le graphe des stations réutilise les arêtes horaires du graphe des quais
+ * (aucune copie) ; les marches internes à une station sont remplacées par un
+ * temps de correspondance propre à chaque paire de quais
+ * ({@link Graph#transferTimeSec(Stop, Stop)}), et seule la marche la plus
+ * courte est gardée entre deux stations. Le détail des quais est restitué par
+ * {@link #expand}.
+ */
+public final class StationGraph {
+    private static final double DEFAULT_SAME_NAME_RADIUS_METERS = 300.0;
+    private static final double DEFAULT_ANY_NAME_RADIUS_METERS  = 30.0;
+    private static final double WALKING_SPEED_MPS               = 1.4;
+
+    private final Graph platforms;
+    private final Graph stations;
+
+    private StationGraph(Graph platforms, Graph stations) {
+        this.platforms = platforms;
+        this.stations = stations;
+    }
+
+    public static StationGraph build(Graph platforms) {
+        return build(platforms, DEFAULT_SAME_NAME_RADIUS_METERS, DEFAULT_ANY_NAME_RADIUS_METERS);
+    }
+
+    /**
+     * @param platforms      graphe des arrêts (quais)
+     * @param sameNameRadius distance maximale entre deux quais de même nom
+     * @param anyNameRadius  distance en deçà de laquelle deux quais sont toujours fusionnés
+     * @return graphe des stations
+     */
+    public static StationGraph build(Graph platforms, double sameNameRadius, double anyNameRadius) {
+        int n = platforms.stopCount();
+        String[] folded = new String[n];
+        for (int i = 0; i < n; i++) folded[i] = StopNameIndex.fold(platforms.getStop(i).getStopName());
+
+        // Stations autour d'un centre, parmi ses voisins à pied
+        GeoKernel geo = platforms.geo();
+        int[] stationOf = new int[n];
+        int[] linkedTo = new int[n];    // station dont un quai est relié à l'arrêt par un arc horaire
+        Arrays.fill(stationOf, -1);
+        Arrays.fill(linkedTo, -1);
+        List<List<Integer>> members = new ArrayList<>();
+        for (int seed = 0; seed < n; seed++) {
+            if (stationOf[seed] >= 0) continue;
+            int st = members.size();
+            List<Integer> quays = new ArrayList<>();
+            members.add(quays);
+            join(platforms, seed, st, stationOf, linkedTo, quays);
+            for (int i = platforms.firstEdge(seed, TransportMode.WALK); i < platforms.endEdge(seed, TransportMode.WALK); i++) {
+                int t = platforms.indexOf(platforms.getEdge(i).getTo());
+                if (stationOf[t] >= 0 || linkedTo[t] == st) continue;
+                double d = geo.distance(seed, t);
+                if (d <= anyNameRadius || (d <= sameNameRadius && folded[seed].equals(folded[t]))) {
+                    join(platforms, t, st, stationOf, linkedTo, quays);
+                }
+            }
+        }
+
+        int m = members.size();
+        Stop[] nodes = new Stop[m];
+        Map<Stop, Integer> indexOf = new HashMap<>((n + m) * 2);
+        // quais : ceux du graphe d'origine, puis les nœuds créés pour les stations
+        List<Stop> quayList = new ArrayList<>(n + m);
+        Map<Stop, Integer> quayIndexOf = new HashMap<>((n + m) * 2);
+        for (int q = 0; q < n; q++) {
+            quayList.add(platforms.getStop(q));
+            quayIndexOf.put(platforms.getStop(q), q);
+        }
+        for (int st = 0; st < m; st++) {
+            List<Integer> quays = members.get(st);
+            Stop first = platforms.getStop(quays.get(0));
+            if (quays.size() == 1) {
+                nodes[st] = first;
+            } else {
+                double lat = 0, lon = 0;
+                for (int q : quays) {
+                    lat += platforms.getStop(q).getLat();
+                    lon += platforms.getStop(q).getLon();
+                }
+                nodes[st] = new Stop("STATION-" + first.getStopId(), first.getStopName(),
+                        lat / quays.size(), lon / quays.size());
+                quayIndexOf.put(nodes[st], quayList.size());
+                quayList.add(nodes[st]);
+            }
+            indexOf.put(nodes[st], st);
+            for (int q : quays) indexOf.put(platforms.getStop(q), st);
+        }
+
+        // Arêtes : horaires (toujours entre stations distinctes), marche la plus courte par paire de stations
+        List<Edge> edges = new ArrayList<>(platforms.edgeCount());
+        for (int st = 0; st < m; st++) {
+            Map<Integer, Edge> bestWalk = new HashMap<>();
+            for (int q : members.get(st)) {
+                for (int i = platforms.firstEdge(q); i < platforms.endEdge(q); i++) {
+                    Edge e = platforms.getEdge(i);
+                    int to = stationOf[platforms.indexOf(e.getTo())];
+                    if (to == st) continue;
+                    if (e.isWalk()) {
+                        bestWalk.merge(to, e, (a, b) -> a.getTravelTimeSec() <= b.getTravelTimeSec() ? a : b);
+                    } else {
+                        edges.add(e);
+                    }
+                }
+            }
+            edges.addAll(bestWalk.values());
+        }
+
+        Graph stations = GraphBuilder.fromEdges(nodes, indexOf, edges);
+        stations.copyRouteTable(platforms);
+        stations.setTransferSpeed(WALKING_SPEED_MPS);
+        stations.setPlatforms(quayList.toArray(new Stop[0]), quayIndexOf);
+        stations.setFootpathsClosed(platforms.footpathsClosed());
+        return new StationGraph(platforms, stations);
+    }
+
+    /**
+     * @return graphe des stations, à utiliser pour la recherche
+     */
+    public Graph getGraph() {
+        return stations;
+    }
+
+    /**
+     * @return graphe des quais d'origine
+     */
+    public Graph getPlatformGraph() {
+        return platforms;
+    }
+
+    /**
+     * Restitue le détail des quais d'un itinéraire calculé sur les stations :
+     * une marche est insérée chaque fois que deux arêtes consécutives ne se
+     * touchent pas au même quai, ainsi qu'au départ et à l'arrivée.
+     *
+     * @param path   arêtes renvoyées par la recherche sur {@link #getGraph()}
+     * @param source quai de départ choisi par l'utilisateur
+     * @param target quai d'arrivée choisi par l'utilisateur
+     * @return itinéraire quai par quai
+     */
+    public List<Edge> expand(List<Edge> path, Stop source, Stop target) {
+        LinkedList<Edge> out = new LinkedList<>();
+        Stop at = source;
+        for (Edge e : path) {
+            if (e.getFrom() != at) out.add(platformWalk(at, e.getFrom()));
+            out.add(e);
+            at = e.getTo();
+        }
+        if (at != target) out.add(platformWalk(at, target));
+        return out;
+    }
+
+    private Edge platformWalk(Stop from, Stop to) {
+        int sec = (int) Math.ceil(platforms.haversine(from, to) / WALKING_SPEED_MPS);
+        return new Edge(from, to, sec);
+    }
+
+    //Place le quai dans la station et marque les arrêts qui lui sont reliés par un arc horaire
+    private static void join(Graph platforms, int quay, int station, int[] stationOf, int[] linkedTo,
+                             List<Integer> quays) {
+        stationOf[quay] = station;
+        quays.add(quay);
+        for (int i = platforms.endEdge(quay, TransportMode.WALK); i < platforms.endEdge(quay); i++) {
+            linkedTo[platforms.indexOf(platforms.getEdge(i).getTo())] = station;
+        }
+        for (byte m = 0; m < TransportMode.COUNT; m++) {
+            if (m == TransportMode.WALK) continue;
+            for (int i = platforms.firstInEdge(quay, m); i < platforms.endInEdge(quay, m); i++) {
+                linkedTo[platforms.indexOf(platforms.getInEdge(i).getFrom())] = station;
+            }
+        }
+    }
+}
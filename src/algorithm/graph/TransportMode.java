@@ -0,0 +1,65 @@
+package algorithm.graph;
+
+import java.util.Collection;
+import java.util.Locale;
+
+/**
+ * Modes de transport codés sur un octet, pour être stockés dans chaque arête
+ * et testés sans allocation ni table de hachage pendant la recherche.
+ */
+public final class TransportMode {
+    public static final byte WALK  = 0;
+    public static final byte BUS   = 1;
+    public static final byte TRAM  = 2;
+    public static final byte METRO = 3;
+    public static final byte TRAIN = 4;
+    public static final byte OTHER = 5;
+
+    /** Nombre de modes (borne des masques de bits). */
+    public static final int COUNT = 6;
+
+    private static final String[] NAMES = {"WALK", "BUS", "TRAM", "METRO", "TRAIN", "OTHER"};
+
+    private TransportMode() {}
+
+    /**
+     * @param type type de ligne tel que lu dans routes.csv (ex. "BUS", "Tram" ou code GTFS)
+     * @return mode correspondant, {@link #OTHER} si inconnu
+     */
+    public static byte fromRouteType(String type) {
+        if (type == null) return OTHER;
+        return switch (type.trim().toUpperCase(Locale.ROOT)) {
+            case "WALK" -> WALK;
+            case "BUS", "3", "700" -> BUS;
+            case "TRAM", "0", "900" -> TRAM;
+            case "METRO", "SUBWAY", "1", "400" -> METRO;
+            case "TRAIN", "RAIL", "2", "100" -> TRAIN;
+            default -> OTHER;
+        };
+    }
+
+    /**
+     * @param mode mode codé
+     * @return nom du mode (ex. "BUS")
+     */
+    public static String name(byte mode) {
+        return NAMES[mode];
+    }
+
+    /**
+     * @param modes noms de modes (casse ignorée)
+     * @return masque de bits, bit {@code m} à 1 si le mode {@code m} est présent
+     * @throws IllegalArgumentException si un nom ne désigne aucun mode
+     */
+    public static int maskOf(Collection<String> modes) {
+        int mask = 0;
+        for (String name : modes) {
+            byte m = fromRouteType(name);
+            if (m == OTHER && !name.trim().equalsIgnoreCase(NAMES[OTHER])) {
+                throw new IllegalArgumentException("Mode inconnu: " + name);
+            }
+            mask |= 1 << m;
+        }
+        return mask;
+    }
+}
@@ -34,6 +34,21 @@ public class CSVReader {
         T map(String[] columns);
     }
 
+    /**
+     * Reçoit une ligne de stop_times.csv déjà décodée, sans objet intermédiaire.
+     */
+    @FunctionalInterface
+    public interface StopTimeConsumer {
+        /**
+         * @param tripId       identifiant du trajet
+         * @param departureSec heure de passage en secondes depuis minuit (modulo 24 h)
+         * @param stopId       identifiant de l'arrêt
+         * @param sequence     rang de l'arrêt dans le trajet
+         * @throws InterruptedException si le consommateur est interrompu
+         */
+        void accept(String tripId, int departureSec, String stopId, int sequence) throws InterruptedException;
+    }
+
     /**
      * Charge les données d'une compagnie depuis un répertoire de CSV.
      *
@@ -43,6 +58,31 @@ public class CSVReader {
      * @throws IOException si un fichier est introuvable ou autre erreur
      */
     public static Company loadCompany(Path directory, String companyName) throws IOException {
+        CSVReader reader = new CSVReader();
+        Company company = loadCompanyMetadata(directory, companyName);
+        company.setStopTimes(reader.readCsv(
+                directory.resolve("stop_times.csv"),
+                cols -> new StopTime(
+                        cols[0],
+                        parseTime(cols[1]),
+                        cols[2],
+                        Integer.parseInt(cols[3])
+                )
+        ));
+
+        return company;
+    }
+
+    /**
+     * Charge les lignes, arrêts et trajets d'une compagnie, sans les horaires
+     * (à lire ensuite en flux avec {@link #forEachStopTime}).
+     *
+     * @param directory   chemin du dossier contenant les CSV
+     * @param companyName nom de la compagnie
+     * @return Company dont les stopTimes sont null
+     * @throws IOException si un fichier est introuvable ou autre erreur
+     */
+    public static Company loadCompanyMetadata(Path directory, String companyName) throws IOException {
         CSVReader reader = new CSVReader();
         Company company = new Company(companyName);
 
@@ -63,19 +103,35 @@ public class CSVReader {
                 directory.resolve("trips.csv"),
                 cols -> new Trip(cols[0], cols[1])
         ));
-        company.setStopTimes(reader.readCsv(
-                directory.resolve("stop_times.csv"),
-                cols -> new StopTime(
-                        cols[0],
-                        parseTime(cols[1]),
-                        cols[2],
-                        Integer.parseInt(cols[3])
-                )
-        ));
 
         return company;
     }
 
+    /**
+     * Parcourt un fichier stop_times.csv ligne par ligne, dans l'ordre du fichier.
+     * Aucun StopTime ni LocalTime n'est créé.
+     *
+     * @param file     fichier stop_times.csv
+     * @param consumer reçoit chaque ligne
+     * @throws IOException          en cas d'erreur d'I/O
+     * @throws InterruptedException si le consommateur est interrompu
+     */
+    public static void forEachStopTime(Path file, StopTimeConsumer consumer) throws IOException, InterruptedException {
+        CSVReader reader = new CSVReader();
+        try (BufferedReader br = new BufferedReader(
+                Files.newBufferedReader(file, StandardCharsets.UTF_8),
+                64 * 1024
+        )) {
+            // sauter la première ligne
+            br.readLine();
+            String line;
+            while ((line = br.readLine()) != null) {
+                String[] cols = line.indexOf('"') < 0 ? line.split(",", -1) : reader.parseCsvLine(line);
+                consumer.accept(cols[0], parseSeconds(cols[1]), cols[2], Integer.parseInt(cols[3]));
+            }
+        }
+    }
+
     /**
      * Lit un CSV et mappe chaque ligne en T, avec pré-allocation basée sur le comptage rapide des lignes.
      *
@@ -158,11 +214,25 @@ public class CSVReader {
      * @return LocalTime
      */
     private static LocalTime parseTime(String timeStr) {
+        return LocalTime.ofSecondOfDay(parseSeconds(timeStr));
+    }
+
+    /**
+     * Parse l'heure au format HH:mm[:ss] en secondes depuis minuit (modulo 24 h).
+     *
+     * @param timeStr l'heure
+     * @return secondes
+     * @throws IllegalArgumentException si les minutes ou les secondes ne sont pas entre 0 et 59
+     */
+    private static int parseSeconds(String timeStr) {
         String[] parts = timeStr.split(":");
         int h = Integer.parseInt(parts[0]);
         int m = Integer.parseInt(parts[1]);
         int s = (parts.length > 2) ? Integer.parseInt(parts[2]) : 0;
+        if (h < 0 || m < 0 || m > 59 || s < 0 || s > 59) {
+            throw new IllegalArgumentException("Heure invalide: " + timeStr);
+        }
         //24:00:00 ou plus valide pour service après minuit
-        return LocalTime.of(h % 24, m, s);
+        return (h % 24) * 3600 + m * 60 + s;
     }
 }
\ No newline at end of file
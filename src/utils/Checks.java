@@ -0,0 +1,561 @@
+package utils;
+
+import algorithm.AStar;
+import algorithm.AlternativeRoutes;
+import algorithm.CostFunction;
+import algorithm.PartitionedGraph;
+import algorithm.ReverseAStar;
+import algorithm.TimeExpandedGraph;
+import algorithm.TripBased;
+import algorithm.graph.Edge;
+import algorithm.graph.FootpathTable;
+import algorithm.graph.Graph;
+import algorithm.graph.GraphView;
+import algorithm.graph.PatternTimetable;
+import algorithm.graph.StationGraph;
+import algorithm.graph.TransportMode;
+import data.Stop;
+import data.StopTime;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalTime;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.ToIntFunction;
+
+/**
+ * Vérifications reproductibles (option {@code --verifier} de Main).
+ * <p>
+ * Chaque vérification confronte un composant à une référence écrite
+ * indépendamment, sur des données tirées avec une graine fixe, et affiche le
+ * nombre d'écarts avec quelques exemples. {@link #passed()} indique si toutes
+ * les vérifications lancées sont passées.
+ */
+public final class Checks {
+    private static final int DAY = 24 * 3600;
+    private static final int MAX_EXAMPLES = 3;
+
+    private final PrintStream out;
+    private int failed;
+
+    public Checks(PrintStream out) {
+        this.out = out;
+    }
+
+    /**
+     * @return vrai si aucune vérification lancée n'a relevé d'écart
+     */
+    public boolean passed() {
+        return failed == 0;
+    }
+
+    /**
+     * Correspondances entre quais d'une station : A*, A* arrière et
+     * itinéraires alternatifs sur le graphe des stations, contre un Dijkstra
+     * sur un modèle où chaque quai est un nœud et chaque correspondance un arc.
+     *
+     * @param stations graphe des stations
+     * @param count    nombre de requêtes (entre quais desservis)
+     * @param seed     graine du tirage
+     */
+    public void platformTransfers(StationGraph stations, int count, long seed) {
+        Graph graph = stations.getGraph();
+        PlatformModel model = new PlatformModel(stations);
+        CostFunction travelTime = (e, prev) -> e.getTravelTimeSec();
+        RoutingHarness harness = new RoutingHarness(graph)
+                .add("Quais explicites", q -> model.pathTo(q.source(), q.departure(), q.target()), null)
+                .add("A* stations", q -> new AStar(graph, q.source(), q.target(), q.departure(), travelTime).pathTo(),
+                        null)
+                .add("Alternatives", q -> {
+                    List<List<Edge>> routes = new AlternativeRoutes(graph.view(GraphView.ALL_MODES),
+                            Map.of(q.source(), 0), Map.of(q.target(), 0), q.departure(), travelTime).routes(1);
+                    return routes.isEmpty() ? null : routes.get(0);
+                }, null);
+        List<RoutingHarness.Query> queries = RoutingHarness.generate(stations.getPlatformGraph(), count, seed);
+        List<RoutingHarness.Stats> stats = harness.run(queries, 0);
+        RoutingHarness.print(stats, out);
+        int mismatches = 0;
+        for (RoutingHarness.Stats s : stats) mismatches += s.mismatches();
+        report("Correspondances entre quais (moteurs avant)", queries.size(), mismatches, List.of());
+
+        // Arrivée avant l'heure optimale : le départ au plus tard ne peut précéder le départ demandé
+        int checked = 0, bad = 0;
+        List<String> examples = new ArrayList<>();
+        for (RoutingHarness.Query q : queries) {
+            int dep = q.departure().toSecondOfDay();
+            int best = model.arrivalSec(q.source(), q.departure(), q.target());
+            if (best >= DAY) continue;
+            checked++;
+            ReverseAStar reverse = new ReverseAStar(graph, q.source(), q.target(), LocalTime.ofSecondOfDay(best),
+                    travelTime);
+            List<Edge> path = reverse.pathTo();
+            int latest = path == null ? -1 : reverse.latestDeparture().toSecondOfDay();
+            if (path == null || latest < dep || harness.arrival(path, q.source(), q.target(), latest) > best) {
+                bad++;
+                if (examples.size() < MAX_EXAMPLES) {
+                    examples.add(String.format("%s -> %s avant %s : départ %s au lieu d'au moins %s",
+                            q.source().getStopId(), q.target().getStopId(), LocalTime.ofSecondOfDay(best),
+                            path == null ? "aucun" : reverse.latestDeparture(), q.departure()));
+                }
+            }
+        }
+        report("Correspondances entre quais (A* arrière)", checked, bad, examples);
+    }
+
+    /**
+     * Arrêts candidats multiples (tous les arrêts à moins de {@code radiusMeters}
+     * de l'arrêt tiré, de chaque côté) : trip-based, espace-temps et partitionné
+     * contre A* multi-sources / multi-cibles. L'itinéraire doit partir d'un
+     * candidat de départ, finir sur un candidat d'arrivée et arriver à la même
+     * heure ; le trip-based, limité au jour même, n'est comparé qu'aux arrivées
+     * avant minuit.
+     */
+    public void candidates(Graph graph, TripBased tripBased, TimeExpandedGraph expanded,
+                           PartitionedGraph partitioned, double radiusMeters, int count, long seed) {
+        CostFunction travelTime = (e, prev) -> e.getTravelTimeSec();
+        RoutingHarness harness = new RoutingHarness(graph);
+        String[] engines = {"Trip-based", "Espace-temps", "Partitionné"};
+        int[] checked = new int[engines.length], bad = new int[engines.length];
+        List<String> examples = new ArrayList<>();
+        for (RoutingHarness.Query q : RoutingHarness.generate(graph, count, seed)) {
+            Set<Stop> sources = near(graph, q.source(), radiusMeters), targets = near(graph, q.target(), radiusMeters);
+            Map<Stop, Integer> access = new HashMap<>(), egress = new HashMap<>();
+            sources.forEach(s -> access.put(s, 0));
+            targets.forEach(s -> egress.put(s, 0));
+            AStar astar = new AStar(graph.view(GraphView.ALL_MODES), access, egress, q.departure(), travelTime);
+            List<Edge> ref = astar.pathTo();
+            int dep = q.departure().toSecondOfDay();
+            int best = ref == null ? Integer.MAX_VALUE
+                    : harness.arrival(ref, astar.reachedSource(), astar.reachedTarget(), dep);
+            List<List<Edge>> paths = new ArrayList<>();
+            paths.add(tripBased.pathTo(sources, targets, q.departure()));
+            paths.add(expanded.pathTo(sources, targets, q.departure()));
+            paths.add(partitioned.route(sources, targets, q.departure()).path());
+            for (int k = 0; k < engines.length; k++) {
+                if (k == 0 && best >= DAY) continue;
+                checked[k]++;
+                List<Edge> path = paths.get(k);
+                int got;
+                if (path == null) got = Integer.MAX_VALUE;
+                else if (path.isEmpty()) got = Collections.disjoint(sources, targets) ? -1 : dep;
+                else if (!sources.contains(path.get(0).getFrom()) || !targets.contains(path.get(path.size() - 1).getTo()))
+                    got = -1;
+                else got = harness.arrival(path, path.get(0).getFrom(), path.get(path.size() - 1).getTo(), dep);
+                if (got != best) {
+                    bad[k]++;
+                    if (examples.size() < MAX_EXAMPLES) {
+                        examples.add(String.format("[%s] %s (%d) -> %s (%d) à %s : %s au lieu de %s", engines[k],
+                                q.source().getStopId(), sources.size(), q.target().getStopId(), targets.size(),
+                                q.departure(), got == -1 ? "extrémités hors candidats" : clock(got), clock(best)));
+                    }
+                }
+            }
+        }
+        int total = 0, mismatches = 0;
+        for (int k = 0; k < engines.length; k++) {
+            total += checked[k];
+            mismatches += bad[k];
+        }
+        report("Arrêts candidats multiples (3 moteurs)", total, mismatches, examples);
+    }
+
+    //Arrêts du graphe à moins de radiusMeters de l'arrêt donné, lui compris
+    private static Set<Stop> near(Graph graph, Stop stop, double radiusMeters) {
+        Set<Stop> out = new LinkedHashSet<>();
+        out.add(stop);
+        for (int i = 0; i < graph.stopCount(); i++) {
+            if (graph.haversine(stop, graph.getStop(i)) <= radiusMeters) out.add(graph.getStop(i));
+        }
+        return out;
+    }
+
+    private static String clock(int sec) {
+        if (sec == Integer.MAX_VALUE) return "aucun";
+        String time = LocalTime.ofSecondOfDay(Math.floorMod(sec, DAY)).toString();
+        return sec >= DAY ? time + " (+" + sec / DAY + " j)" : time;
+    }
+
+    /**
+     * Motifs horaires contre les stop_times lus directement : chaque trajet d'au
+     * moins deux arrêts figure une fois, avec ses arrêts dans l'ordre des
+     * stop_sequence et ses heures ; aucun trajet d'un motif n'en dépasse un
+     * autre ; chaque arête rematérialisée existe dans le graphe.
+     *
+     * @param patterns  motifs relevés pendant la construction du graphe
+     * @param graph     graphe construit en même temps
+     * @param stopTimes horaires de toutes les compagnies
+     */
+    public void patterns(PatternTimetable patterns, Graph graph, List<StopTime> stopTimes) {
+        Map<String, List<StopTime>> byTrip = new HashMap<>();
+        for (StopTime st : stopTimes) byTrip.computeIfAbsent(st.getTripId(), k -> new ArrayList<>()).add(st);
+        byTrip.values().forEach(l -> l.sort(Comparator.comparingInt(StopTime::getStopSequence)));
+        byTrip.values().removeIf(l -> l.size() < 2);
+
+        Set<String> hops = new HashSet<>();
+        for (int i = 0; i < graph.edgeCount(); i++) {
+            Edge e = graph.getEdge(i);
+            if (e.getTripId() != null) hops.add(hopKey(e));
+        }
+
+        int bad = 0;
+        List<String> examples = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        for (int t = 0; t < patterns.tripCount(); t++) {
+            int p = patterns.patternOf(t);
+            String id = patterns.tripId(t);
+            List<StopTime> ref = byTrip.get(id);
+            String problem = null;
+            if (!seen.add(id)) problem = "relevé deux fois";
+            else if (ref == null) problem = "absent des stop_times";
+            else if (ref.size() != patterns.length(p)) problem = patterns.length(p) + " arrêts au lieu de " + ref.size();
+            for (int pos = 0; problem == null && pos < ref.size(); pos++) {
+                String stop = graph.getStop(patterns.stopAt(p, pos)).getStopId();
+                int sec = ref.get(pos).getDepartureTime().toSecondOfDay();
+                if (!stop.equals(ref.get(pos).getStopId()) || Math.floorMod(patterns.departure(t, pos), DAY) != sec)
+                    problem = "position " + pos + " : " + stop + " à " + clock(Math.floorMod(patterns.departure(t, pos), DAY))
+                            + " au lieu de " + ref.get(pos).getStopId() + " à " + clock(sec);
+                else if (pos > 0 && patterns.departure(t, pos) < patterns.departure(t, pos - 1))
+                    problem = "heures décroissantes à la position " + pos;
+                else if (t > patterns.firstTrip(p) && patterns.departure(t - 1, pos) > patterns.departure(t, pos))
+                    problem = "dépasse le trajet précédent du motif à la position " + pos;
+                else if (pos + 1 < ref.size() && !hops.contains(hopKey(patterns.hop(t, pos))))
+                    problem = "arête " + pos + " absente du graphe";
+            }
+            if (problem != null) {
+                bad++;
+                if (examples.size() < MAX_EXAMPLES) examples.add(id + " : " + problem);
+            }
+        }
+        for (String id : byTrip.keySet()) {
+            if (!seen.contains(id)) {
+                bad++;
+                if (examples.size() < MAX_EXAMPLES) examples.add(id + " : absent des motifs");
+            }
+        }
+        report("Motifs horaires", byTrip.size(), bad, examples);
+    }
+
+    private static String hopKey(Edge e) {
+        return e.getTripId() + '|' + e.getFrom().getStopId() + '|' + e.getTo().getStopId() + '|'
+                + e.getDepartureTimeSec() + '|' + e.getTravelTimeSec();
+    }
+
+    /**
+     * Fermeture des marches : table calculée contre un Dijkstra par arrêt sur
+     * les marches directes, relecture du cache à l'identique, refus (null, sans
+     * exception) d'un cache corrompu ou calculé pour une autre vitesse de marche.
+     *
+     * @param walks        graphe des marches directes
+     * @param radiusMeters rayon de marche
+     */
+    public void footpaths(Graph walks, double radiusMeters) {
+        FootpathTable table = FootpathTable.compute(walks, radiusMeters);
+        int n = walks.stopCount(), bad = 0;
+        List<String> examples = new ArrayList<>();
+        for (int s = 0; s < n; s++) {
+            Map<Integer, Integer> expected = walkClosure(walks, s, table.maxSec());
+            Map<Integer, Integer> got = new TreeMap<>();
+            for (int i = table.first(s); i < table.end(s); i++) got.put(table.to(i), table.sec(i));
+            if (!got.equals(expected)) {
+                bad++;
+                if (examples.size() < MAX_EXAMPLES)
+                    examples.add(walks.getStop(s).getStopId() + " : " + got + " au lieu de " + expected);
+            }
+        }
+        report("Marches (fermeture)", n, bad, examples);
+
+        bad = 0;
+        examples.clear();
+        Path file = null;
+        try {
+            file = Files.createTempFile("footpaths", ".bin");
+            table.save(file);
+            byte[] saved = Files.readAllBytes(file);
+            FootpathTable read = FootpathTable.load(file, table.fingerprint(), table.maxSec(), n);
+            if (read == null || !sameRows(table, read)) {
+                bad++;
+                examples.add("relecture : " + (read == null ? "refusée" : "différente"));
+            }
+
+            // en-tête : magic, version, empreinte, durée max ; puis offsets, to et sec précédés de leur longueur
+            int maxSecAt = 16, toAt = 20 + 4 + 4 * (n + 1) + 4, secAt = toAt + 4 * table.size() + 4;
+            Map<String, byte[]> corrupted = new LinkedHashMap<>();
+            corrupted.put("durée max", withInt(saved, maxSecAt, table.maxSec() + 1));
+            corrupted.put("tronqué", Arrays.copyOf(saved, saved.length / 2));
+            if (table.size() > 0) {
+                corrupted.put("arrêt hors graphe", withInt(saved, toAt, n));
+                corrupted.put("durée négative", withInt(saved, secAt, -1));
+                corrupted.put("durée hors rayon", withInt(saved, secAt, table.maxSec() + 1));
+            }
+            for (Map.Entry<String, byte[]> c : corrupted.entrySet()) {
+                Files.write(file, c.getValue());
+                String outcome;
+                try {
+                    outcome = FootpathTable.load(file, table.fingerprint(), table.maxSec(), n) == null ? null : "acceptée";
+                } catch (IOException e) {
+                    outcome = "exception " + e;
+                }
+                if (outcome != null) {
+                    bad++;
+                    if (examples.size() < MAX_EXAMPLES) examples.add(c.getKey() + " : " + outcome);
+                }
+            }
+
+            // cache d'une autre vitesse : recalcul à la vitesse demandée
+            Files.write(file, saved);
+            FootpathTable faster = FootpathTable.cached(walks, radiusMeters, 2.0, file);
+            if (faster.maxSec() != (int) Math.ceil(radiusMeters / 2.0)) {
+                bad++;
+                examples.add("vitesse 2 m/s : durée max " + faster.maxSec());
+            }
+        } catch (IOException e) {
+            bad++;
+            examples.add("fichier temporaire : " + e);
+        } finally {
+            try {
+                if (file != null) Files.deleteIfExists(file);
+            } catch (IOException ignored) {
+            }
+        }
+        report("Marches (cache)", 7, bad, examples);
+    }
+
+    //Dijkstra de référence sur les marches directes, borné à maxSec ; source exclue
+    private static Map<Integer, Integer> walkClosure(Graph walks, int source, int maxSec) {
+        Map<Integer, Integer> dist = new TreeMap<>();
+        PriorityQueue<int[]> pq = new PriorityQueue<>(Comparator.comparingInt(a -> a[1]));
+        pq.add(new int[]{source, 0});
+        Set<Integer> done = new HashSet<>();
+        while (!pq.isEmpty()) {
+            int[] cur = pq.poll();
+            if (!done.add(cur[0])) continue;
+            if (cur[0] != source) dist.put(cur[0], cur[1]);
+            for (int i = walks.firstEdge(cur[0], TransportMode.WALK); i < walks.endEdge(cur[0], TransportMode.WALK); i++) {
+                Edge e = walks.getEdge(i);
+                int d = cur[1] + e.getTravelTimeSec();
+                if (d <= maxSec) pq.add(new int[]{walks.indexOf(e.getTo()), d});
+            }
+        }
+        return dist;
+    }
+
+    private static boolean sameRows(FootpathTable a, FootpathTable b) {
+        if (a.stopCount() != b.stopCount() || a.size() != b.size() || a.maxSec() != b.maxSec()) return false;
+        for (int s = 0; s < a.stopCount(); s++) if (a.first(s) != b.first(s)) return false;
+        for (int i = 0; i < a.size(); i++) if (a.to(i) != b.to(i) || a.sec(i) != b.sec(i)) return false;
+        return true;
+    }
+
+    private static byte[] withInt(byte[] bytes, int at, int value) {
+        byte[] copy = bytes.clone();
+        ByteBuffer.wrap(copy).putInt(at, value);
+        return copy;
+    }
+
+    /**
+     * Index des noms d'arrêts : suggestions par préfixe contre un parcours de
+     * tous les noms (k plus importants parmi ceux dont un mot commence par la
+     * saisie), repli des noms non ASCII, et repli par trigrammes identique
+     * qu'il soit appelé d'un seul thread ou de plusieurs à la fois.
+     *
+     * @param index      index à vérifier
+     * @param stops      arrêts indexés
+     * @param importance importance donnée à l'index pour chaque arrêt
+     * @param count      nombre de saisies tirées
+     * @param seed       graine du tirage
+     */
+    public void stopNames(StopNameIndex index, Collection<Stop> stops, ToIntFunction<Stop> importance,
+                         int count, long seed) {
+        // référence : importance cumulée par nom replié
+        Map<String, Long> weight = new HashMap<>();
+        for (Stop s : stops) {
+            String f = StopNameIndex.fold(s.getStopName());
+            if (!f.isEmpty()) weight.merge(f, (long) importance.applyAsInt(s), Long::sum);
+        }
+        List<String> folded = new ArrayList<>(weight.keySet());
+        Collections.sort(folded);
+        Random rnd = new Random(seed);
+        int k = 5, bad = 0;
+        List<String> examples = new ArrayList<>();
+        List<String> queries = new ArrayList<>();
+        for (int n = 0; n < count && !folded.isEmpty(); n++) {
+            String f = folded.get(rnd.nextInt(folded.size()));
+            List<Integer> starts = new ArrayList<>();
+            for (int i = 0; i < f.length(); i++) if (i == 0 || f.charAt(i - 1) == ' ') starts.add(i);
+            int from = starts.get(rnd.nextInt(starts.size()));
+            String q = StopNameIndex.fold(f.substring(from, Math.min(f.length(), from + 1 + rnd.nextInt(6))));
+            queries.add(q);
+            List<String> expected = new ArrayList<>();
+            for (String g : folded) if (wordPrefix(g, q)) expected.add(g);
+            expected.sort(Comparator.comparingLong((String g) -> weight.get(g)).reversed());
+            int m = Math.min(k, expected.size());
+            List<StopNameIndex.Suggestion> got = index.suggest(q, k);
+            boolean ok = got.size() >= m;
+            for (int i = 0; ok && i < got.size(); i++) {
+                String g = StopNameIndex.fold(got.get(i).name());
+                ok = i < m ? wordPrefix(g, q) && weight.get(g) == weight.get(expected.get(i)).longValue()
+                        : !wordPrefix(g, q);
+            }
+            if (!ok) {
+                bad++;
+                if (examples.size() < MAX_EXAMPLES) examples.add("« " + q + " » : " + got.stream()
+                        .map(StopNameIndex.Suggestion::name).toList() + " au lieu de " + expected.subList(0, m));
+            }
+        }
+        report("Noms d'arrêts (préfixes)", queries.size(), bad, examples);
+
+        // repli : lettres et chiffres de toute écriture gardés, accents et ponctuation retirés
+        String[][] folds = {{"Liège-Guillemins", "liege guillemins"}, {"Bruxelles/Brussel (Nord)", "bruxelles brussel nord"},
+                {"Θεσσαλονίκη Σταθμός", "θεσσαλονικη σταθμος"}, {"Москва-Пасс.", "москва пасс"}, {"Ørestad 2", "ørestad 2"}};
+        bad = 0;
+        examples.clear();
+        for (String[] f : folds) {
+            String got = StopNameIndex.fold(f[0]);
+            if (!got.equals(f[1])) {
+                bad++;
+                if (examples.size() < MAX_EXAMPLES) examples.add(f[0] + " : « " + got + " » au lieu de « " + f[1] + " »");
+            }
+        }
+        report("Noms d'arrêts (repli Unicode)", folds.length, bad, examples);
+
+        // fautes de frappe : le repli par trigrammes réutilise des tableaux de travail par thread
+        List<String> typos = new ArrayList<>();
+        for (String q : queries) {
+            if (q.length() < 3) continue;
+            int i = rnd.nextInt(q.length());
+            typos.add(q.substring(0, i) + 'x' + q.substring(i + 1));
+        }
+        List<List<String>> sequential = new ArrayList<>();
+        for (String q : typos) sequential.add(names(index.suggest(q, k)));
+        bad = 0;
+        examples.clear();
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<List<String>>> parallel = new ArrayList<>();
+            for (String q : typos) parallel.add(pool.submit(() -> names(index.suggest(q, k))));
+            for (int i = 0; i < typos.size(); i++) {
+                List<String> got = parallel.get(i).get();
+                if (!got.equals(sequential.get(i))) {
+                    bad++;
+                    if (examples.size() < MAX_EXAMPLES)
+                        examples.add("« " + typos.get(i) + " » : " + got + " au lieu de " + sequential.get(i));
+                }
+            }
+        } catch (InterruptedException | ExecutionException e) {
+            throw new IllegalStateException(e);
+        } finally {
+            pool.shutdown();
+        }
+        report("Noms d'arrêts (trigrammes, 4 threads)", typos.size(), bad, examples);
+    }
+
+    //Vrai si un mot du nom replié g commence la saisie q (q peut couvrir plusieurs mots)
+    private static boolean wordPrefix(String g, String q) {
+        for (int i = 0; i < g.length(); i++) {
+            if ((i == 0 || g.charAt(i - 1) == ' ') && g.startsWith(q, i)) return true;
+        }
+        return false;
+    }
+
+    private static List<String> names(List<StopNameIndex.Suggestion> suggestions) {
+        return suggestions.stream().map(StopNameIndex.Suggestion::name).toList();
+    }
+
+    private void report(String name, int checked, int mismatches, List<String> examples) {
+        out.printf("%s %s : %d cas, %d écart(s)%n", mismatches == 0 ? "OK   " : "ÉCHEC", name, checked, mismatches);
+        for (String ex : examples) out.println("  " + ex);
+        if (mismatches > 0) failed++;
+    }
+
+    /**
+     * Modèle explicite des quais d'un graphe de stations : un nœud par quai,
+     * les arcs du graphe des stations depuis leur quai de départ, et un arc de
+     * correspondance entre deux quais d'une même station. Une correspondance
+     * ne compte pas comme une marche : sur marches fermées, une marche ne suit
+     * jamais une marche, correspondances intercalées ou non.
+     */
+    private static final class PlatformModel {
+        private final Graph graph;
+        private final Stop[] quays;
+        private final Map<Stop, Integer> quayIndex = new HashMap<>();
+        private final List<List<Edge>> out = new ArrayList<>();          // arcs réels par quai de départ
+        private final List<List<Integer>> sameStation = new ArrayList<>(); // autres quais de la station
+
+        PlatformModel(StationGraph stations) {
+            graph = stations.getGraph();
+            Graph platforms = stations.getPlatformGraph();
+            quays = new Stop[platforms.stopCount()];
+            Map<Integer, List<Integer>> byStation = new HashMap<>();
+            for (int q = 0; q < quays.length; q++) {
+                quays[q] = platforms.getStop(q);
+                quayIndex.put(quays[q], q);
+                out.add(new ArrayList<>());
+                byStation.computeIfAbsent(graph.indexOf(quays[q]), k -> new ArrayList<>()).add(q);
+            }
+            for (int q = 0; q < quays.length; q++) {
+                int node = graph.indexOf(quays[q]);
+                for (int i = graph.firstEdge(node); i < graph.endEdge(node); i++) {
+                    if (graph.getEdge(i).getFrom() == quays[q]) out.get(q).add(graph.getEdge(i));
+                }
+                List<Integer> others = new ArrayList<>(byStation.get(node));
+                others.remove(Integer.valueOf(q));
+                sameStation.add(others);
+            }
+        }
+
+        int arrivalSec(Stop source, LocalTime departure, Stop target) {
+            Label l = search(source, departure, target);
+            return l == null ? Integer.MAX_VALUE : l.time;
+        }
+
+        List<Edge> pathTo(Stop source, LocalTime departure, Stop target) {
+            Label l = search(source, departure, target);
+            if (l == null) return null;
+            LinkedList<Edge> path = new LinkedList<>();
+            for (; l != null; l = l.parent) if (l.via != null) path.addFirst(l.via);
+            return path;
+        }
+
+        //Dijkstra temps-dépendant sur (quai, dernier arc réel à pied)
+        private Label search(Stop source, LocalTime departure, Stop target) {
+            Integer s = quayIndex.get(source), t = quayIndex.get(target);
+            if (s == null || t == null) return null;
+            boolean closed = graph.footpathsClosed();
+            int[][] best = new int[2][quays.length];
+            for (int[] b : best) Arrays.fill(b, Integer.MAX_VALUE);
+            PriorityQueue<Label> pq = new PriorityQueue<>(Comparator.comparingInt(Label::time));
+            pq.add(new Label(s, false, departure.toSecondOfDay(), null, null));
+            while (!pq.isEmpty()) {
+                Label n = pq.poll();
+                int w = n.walked ? 1 : 0;
+                if (n.time >= best[w][n.quay] || n.time >= best[0][n.quay]) continue;
+                best[w][n.quay] = n.time;
+                if (n.quay == t) return n;
+                for (int q : sameStation.get(n.quay)) {
+                    int arrive = n.time + graph.transferTimeSec(quays[n.quay], quays[q]);
+                    pq.add(new Label(q, n.walked, arrive, null, n));
+                }
+                for (Edge e : out.get(n.quay)) {
+                    if (closed && n.walked && e.isWalk()) continue;
+                    int depart = n.time;
+                    if (e.getTripId() != null) {
+                        depart = e.getDepartureTimeSec();
+                        while (depart < n.time) depart += DAY;
+                    }
+                    pq.add(new Label(quayIndex.get(e.getTo()), e.isWalk(), depart + e.getTravelTimeSec(), e, n));
+                }
+            }
+            return null;
+        }
+
+        // étiquette : quai, arrivée par une marche (correspondances transparentes), heure, arc réel, précédente
+        private record Label(int quay, boolean walked, int time, Edge via, Label parent) {}
+    }
+}
@@ -0,0 +1,318 @@
+package utils;
+
+import algorithm.graph.Edge;
+import algorithm.graph.Graph;
+import algorithm.graph.TransportMode;
+import data.*;
+
+import java.io.PrintStream;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.time.LocalTime;
+import java.util.*;
+
+/**
+ * Estimation de l'occupation mémoire des structures chargées.
+ * <p>
+ * Les tailles sont calculées à partir de la disposition des objets d'une JVM
+ * 64 bits avec références compressées (en-tête de 12 octets, références de 4
+ * octets, alignement sur 8 octets), sans parcourir le tas : le rapport est une
+ * estimation, rapide même sur le réseau complet. Un objet partagé entre
+ * plusieurs composants (chaîne, arrêt, LocalTime) n'est compté qu'une fois,
+ * dans le premier composant qui le référence.
+ * <p>
+ * Les structures sans méthode dédiée passent par {@link #addObject}, qui suit
+ * les champs par réflexion. Les tables, collections, chaînes et tableaux y sont
+ * estimés d'après leur taille, sans entrer dans les classes internes de java.*.
+ * Un graphe déjà compté par {@link #addGraph} n'y est pas recompté.
+ */
+public final class MemoryReport {
+    private static final int HEADER = 12;
+    private static final int REF = 4;
+    private static final int ARRAY_HEADER = 16;
+
+    private static final long STOP = align(HEADER + 2 * REF + 2 * 8);
+    private static final long ROUTE = align(HEADER + 3 * REF);
+    private static final long TRIP = align(HEADER + 2 * REF);
+    private static final long STOP_TIME = align(HEADER + 3 * REF + 4);
+    private static final long LOCAL_TIME = align(HEADER + 3 + 4);
+    private static final long EDGE = align(HEADER + 3 * REF + 4 * 4 + 1);
+    private static final long STRING = align(HEADER + REF + 4 + 2);
+    private static final long ARRAY_LIST = align(HEADER + 2 * 4 + REF);
+    private static final long HASH_MAP = align(HEADER + 4 * REF + 4 * 4);
+    private static final long HASH_NODE = align(HEADER + 4 + 3 * REF);
+
+    private final List<Line> lines = new ArrayList<>();
+    private final Set<Object> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final Map<String, Integer> stringCopies = new HashMap<>();
+    private long stringCount;
+    private long stringBytes;
+
+    /**
+     * Ligne du rapport : composant, nombre d'objets, octets estimés.
+     */
+    public record Line(String component, long objects, long bytes) {}
+
+    /**
+     * Compte les listes d'une compagnie (lignes, arrêts, trajets, horaires).
+     *
+     * @param company compagnie chargée
+     */
+    public void addCompany(Company company) {
+        String p = "[" + company.getName() + "] ";
+        if (company.getRoutes() != null) {
+            long b = list(company.getRoutes());
+            for (Route r : company.getRoutes()) {
+                b += unique(r, ROUTE) + string(r.getRouteId()) + string(r.getShortName()) + string(r.getType());
+            }
+            add(p + "routes", company.getRoutes().size(), b);
+        }
+        if (company.getStops() != null) {
+            long b = list(company.getStops());
+            for (Stop s : company.getStops()) b += stop(s);
+            add(p + "stops", company.getStops().size(), b);
+        }
+        if (company.getTrips() != null) {
+            long b = list(company.getTrips());
+            for (Trip t : company.getTrips()) {
+                b += unique(t, TRIP) + string(t.tripId()) + string(t.routeId());
+            }
+            add(p + "trips", company.getTrips().size(), b);
+        }
+        if (company.getStopTimes() != null) {
+            long b = list(company.getStopTimes());
+            for (StopTime st : company.getStopTimes()) {
+                b += unique(st, STOP_TIME) + unique(st.getDepartureTime(), LOCAL_TIME)
+                        + string(st.getTripId()) + string(st.getStopId());
+            }
+            add(p + "stopTimes", company.getStopTimes().size(), b);
+        }
+    }
+
+    /**
+     * Compte un graphe : tableaux d'adjacence, arcs horaires et arcs de marche.
+     *
+     * @param name  nom affiché
+     * @param graph graphe
+     */
+    public void addGraph(String name, Graph graph) {
+        seen.add(graph);
+        int n = graph.stopCount();
+        long stops = 0;
+        for (int i = 0; i < n; i++) stops += stop(graph.getStop(i));
+        add(name + " arrêts", n, refArray(n) + stops);
+        // offsets (n * modes + 1 entiers), tableau des arcs, table indexOf
+        add(name + " adjacence", graph.edgeCount(),
+                intArray((long) n * TransportMode.COUNT + 1) + refArray(graph.edgeCount()) + hashMap(n));
+
+        long timetabled = 0, timetabledBytes = 0, walk = 0, walkBytes = 0;
+        for (int i = 0; i < graph.edgeCount(); i++) {
+            Edge e = graph.getEdge(i);
+            long b = unique(e, EDGE) + stop(e.getFrom()) + stop(e.getTo());
+            if (e.isWalk()) {
+                walk++;
+                walkBytes += b;
+            } else {
+                timetabled++;
+                timetabledBytes += b + string(e.getTripId());
+            }
+        }
+        add(name + " arcs horaires", timetabled, timetabledBytes);
+        add(name + " arcs de marche", walk, walkBytes);
+    }
+
+    /**
+     * Compte tout ce qui est atteignable depuis un objet et pas encore compté,
+     * en suivant ses champs par réflexion.
+     *
+     * @param name nom affiché
+     * @param root objet de départ
+     */
+    public void addObject(String name, Object root) {
+        long objects = 0, bytes = 0;
+        Deque<Object> pending = new ArrayDeque<>();
+        if (root != null) pending.push(root);
+        while (!pending.isEmpty()) {
+            Object o = pending.pop();
+            long b;
+            if (o instanceof String str) {
+                b = string(str);
+                if (b == 0) continue;
+            } else {
+                if (o instanceof Enum<?> || o instanceof Class<?> || !seen.add(o)) continue;
+                b = shallow(o, pending);
+            }
+            objects++;
+            bytes += b;
+        }
+        add(name, objects, bytes);
+    }
+
+    /**
+     * Compte une table de correspondance (clés chaînes, valeurs déjà comptées ou non).
+     *
+     * @param name   nom affiché
+     * @param map    table
+     * @param values taille estimée d'une valeur non encore comptée
+     */
+    public void addMap(String name, Map<String, ?> map, long values) {
+        long b = hashMap(map.size());
+        for (Map.Entry<String, ?> en : map.entrySet()) {
+            b += string(en.getKey()) + unique(en.getValue(), values);
+        }
+        add(name, map.size(), b);
+    }
+
+    /**
+     * Ajoute une ligne calculée par l'appelant.
+     */
+    public void add(String component, long objects, long bytes) {
+        lines.add(new Line(component, objects, bytes));
+    }
+
+    /**
+     * @return lignes du rapport, dans l'ordre d'ajout
+     */
+    public List<Line> lines() {
+        return Collections.unmodifiableList(lines);
+    }
+
+    /**
+     * Affiche le rapport, puis le bilan des chaînes et de leurs doublons.
+     *
+     * @param out flux de sortie
+     */
+    public void print(PrintStream out) {
+        long total = 0;
+        out.println("Composant                           objets        octets");
+        for (Line l : lines) {
+            out.printf("%-30s %12d %13s%n", l.component(), l.objects(), human(l.bytes()));
+            total += l.bytes();
+        }
+        long duplicates = 0, duplicateBytes = 0;
+        for (Map.Entry<String, Integer> en : stringCopies.entrySet()) {
+            int extra = en.getValue() - 1;
+            if (extra > 0) {
+                duplicates += extra;
+                duplicateBytes += extra * stringSize(en.getKey());
+            }
+        }
+        out.printf("%-30s %12s %13s%n", "TOTAL", "", human(total));
+        out.printf("Chaînes : %d instances (%s, incluses ci-dessus), %d valeurs distinctes%n",
+                stringCount, human(stringBytes), stringCopies.size());
+        out.printf("Doublons de chaînes : %d instances, %s récupérables par dédoublonnage%n",
+                duplicates, human(duplicateBytes));
+        Runtime rt = Runtime.getRuntime();
+        out.printf("Tas utilisé (JVM) : %s%n", human(rt.totalMemory() - rt.freeMemory()));
+    }
+
+    private long stop(Stop s) {
+        if (!seen.add(s)) return 0;
+        return STOP + string(s.getStopId()) + string(s.getStopName());
+    }
+
+    private long string(String s) {
+        if (s == null || !seen.add(s)) return 0;
+        stringCopies.merge(s, 1, Integer::sum);
+        long b = stringSize(s);
+        stringCount++;
+        stringBytes += b;
+        return b;
+    }
+
+    //Taille propre de l'objet ; les objets qu'il référence sont ajoutés à pending
+    private static long shallow(Object o, Deque<Object> pending) {
+        Class<?> c = o.getClass();
+        if (c.isArray()) {
+            int length = Array.getLength(o);
+            Class<?> type = c.getComponentType();
+            if (type.isPrimitive()) return align(ARRAY_HEADER + (long) length * primitiveSize(type));
+            for (Object x : (Object[]) o) push(pending, x);
+            return refArray(length);
+        }
+        if (o instanceof Map<?, ?> map) {
+            for (Map.Entry<?, ?> en : map.entrySet()) {
+                push(pending, en.getKey());
+                push(pending, en.getValue());
+            }
+            return hashMap(map.size());
+        }
+        if (o instanceof Collection<?> col) {
+            for (Object x : col) push(pending, x);
+            return o instanceof Set<?> ? hashMap(col.size()) : ARRAY_LIST + refArray(col.size());
+        }
+        if (c.getName().startsWith("java.")) {
+            // pas de réflexion dans les classes du JDK : tailles connues, sinon un objet minimal
+            if (o instanceof LocalTime) return LOCAL_TIME;
+            if (o instanceof Number || o instanceof Boolean || o instanceof Character) return align(HEADER + 8);
+            return align(HEADER + REF);
+        }
+        long size = HEADER;
+        for (Class<?> k = c; k != null && k != Object.class; k = k.getSuperclass()) {
+            for (Field f : k.getDeclaredFields()) {
+                if (Modifier.isStatic(f.getModifiers())) continue;
+                if (f.getType().isPrimitive()) {
+                    size += primitiveSize(f.getType());
+                    continue;
+                }
+                size += REF;
+                try {
+                    f.setAccessible(true);
+                    push(pending, f.get(o));
+                } catch (ReflectiveOperationException | RuntimeException e) {
+                    // champ illisible : seule la référence est comptée
+                }
+            }
+        }
+        return align(size);
+    }
+
+    private static void push(Deque<Object> pending, Object o) {
+        if (o != null) pending.push(o);
+    }
+
+    private static int primitiveSize(Class<?> type) {
+        if (type == long.class || type == double.class) return 8;
+        if (type == int.class || type == float.class) return 4;
+        if (type == short.class || type == char.class) return 2;
+        return 1;
+    }
+
+    private long unique(Object o, long size) {
+        return o != null && seen.add(o) ? size : 0;
+    }
+
+    //chaîne compacte (latin-1 : un octet par caractère, sinon deux)
+    private static long stringSize(String s) {
+        boolean latin1 = s.chars().allMatch(c -> c < 256);
+        return STRING + align(ARRAY_HEADER + (long) s.length() * (latin1 ? 1 : 2));
+    }
+
+    private static long list(List<?> l) {
+        return ARRAY_LIST + refArray(l.size());
+    }
+
+    private static long hashMap(int size) {
+        int table = Integer.highestOneBit(Math.max(1, (int) (size / 0.75f)) * 2 - 1);
+        return HASH_MAP + refArray(table) + size * HASH_NODE;
+    }
+
+    private static long refArray(long length) {
+        return align(ARRAY_HEADER + length * REF);
+    }
+
+    private static long intArray(long length) {
+        return align(ARRAY_HEADER + length * 4);
+    }
+
+    private static long align(long bytes) {
+        return (bytes + 7) & ~7L;
+    }
+
+    private static String human(long bytes) {
+        if (bytes < 1024) return bytes + " o";
+        if (bytes < 1024 * 1024) return String.format("%.1f Ko", bytes / 1024.0);
+        return String.format("%.1f Mo", bytes / (1024.0 * 1024));
+    }
+}
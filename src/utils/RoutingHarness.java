@@ -0,0 +1,195 @@
+package utils;
+
+import algorithm.graph.Edge;
+import algorithm.graph.Graph;
+import data.Stop;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.time.LocalTime;
+import java.util.*;
+import java.util.function.Function;
+import java.util.function.IntSupplier;
+
+/**
+ * Banc d'essai différentiel des moteurs de recherche.
+ * <p>
+ * Chaque moteur enregistré répond aux mêmes requêtes ; le premier sert de
+ * référence (en pratique {@link algorithm.TimeDependentDijkstra}). Pour chaque
+ * moteur le rapport donne les arrivées différentes de la référence, les nœuds
+ * fixés, la latence (moyenne, médiane, 95e centile) et les octets alloués par
+ * requête (compteur d'allocation du thread, si la JVM le fournit).
+ * <p>
+ * L'heure d'arrivée d'un itinéraire est recalculée ici, indépendamment du
+ * moteur : attente du prochain passage, correspondance interne aux stations
+ * avant tout arc partant d'un autre quai (depuis le quai source et jusqu'au
+ * quai cible compris), durée des arcs.
+ */
+public final class RoutingHarness {
+    private static final int DAY = 24 * 3600;
+    private static final int MAX_EXAMPLES = 3;
+
+    /**
+     * Requête du banc : arrêts de départ et d'arrivée, heure de départ.
+     */
+    public record Query(Stop source, Stop target, LocalTime departure) {}
+
+    /**
+     * Résultats d'un moteur.
+     *
+     * @param mismatches requêtes dont l'arrivée diffère de la référence
+     * @param settled    nœuds fixés par requête en moyenne, -1 si le moteur ne les compte pas
+     * @param allocBytes octets alloués par requête en moyenne, -1 si la mesure est indisponible
+     * @param examples   quelques requêtes en désaccord, pour le diagnostic
+     */
+    public record Stats(String engine, int queries, int found, int mismatches, double settled,
+                        double meanMs, double p50Ms, double p95Ms, double allocBytes, List<String> examples) {}
+
+    private record Engine(String name, Function<Query, List<Edge>> route, IntSupplier settled) {}
+
+    private final Graph graph;
+    private final List<Engine> engines = new ArrayList<>();
+
+    /**
+     * @param graph graphe dont sont issus les arcs rendus par les moteurs
+     */
+    public RoutingHarness(Graph graph) {
+        this.graph = graph;
+    }
+
+    /**
+     * Ajoute un moteur ; le premier ajouté est la référence.
+     *
+     * @param route   itinéraire de la requête, null si aucun
+     * @param settled nœuds fixés par la dernière requête, null si le moteur ne les compte pas
+     */
+    public RoutingHarness add(String name, Function<Query, List<Edge>> route, IntSupplier settled) {
+        engines.add(new Engine(name, route, settled));
+        return this;
+    }
+
+    /**
+     * Requêtes aléatoires reproductibles entre arrêts desservis, départ entre 6 h et 22 h.
+     *
+     * @param count nombre de requêtes
+     * @param seed  graine du générateur
+     */
+    public static List<Query> generate(Graph graph, int count, long seed) {
+        List<Stop> served = new ArrayList<>();
+        for (int s = 0; s < graph.stopCount(); s++) {
+            if (graph.endEdge(s) > graph.firstEdge(s)) served.add(graph.getStop(s));
+        }
+        List<Query> queries = new ArrayList<>(count);
+        if (served.size() < 2) return queries;
+        Random random = new Random(seed);
+        while (queries.size() < count) {
+            Stop source = served.get(random.nextInt(served.size()));
+            Stop target = served.get(random.nextInt(served.size()));
+            if (source == target) continue;
+            queries.add(new Query(source, target, LocalTime.ofSecondOfDay(6 * 3600 + random.nextInt(16 * 3600))));
+        }
+        return queries;
+    }
+
+    /**
+     * Fait tourner chaque moteur sur les requêtes, après un tour de chauffe non mesuré.
+     *
+     * @param warmup nombre de requêtes de chauffe par moteur
+     * @return résultats, dans l'ordre d'enregistrement des moteurs
+     */
+    public List<Stats> run(List<Query> queries, int warmup) {
+        com.sun.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean()
+                instanceof com.sun.management.ThreadMXBean t && t.isThreadAllocatedMemorySupported() ? t : null;
+        long thread = Thread.currentThread().threadId();
+        int[] reference = null;
+        List<Stats> stats = new ArrayList<>();
+        for (Engine engine : engines) {
+            for (int i = 0; i < Math.min(warmup, queries.size()); i++) engine.route.apply(queries.get(i));
+
+            int n = queries.size();
+            int[] arrival = new int[n];
+            long[] nanos = new long[n];
+            long settled = 0, alloc = 0;
+            int found = 0, mismatches = 0;
+            List<String> examples = new ArrayList<>();
+            for (int i = 0; i < n; i++) {
+                Query q = queries.get(i);
+                long a0 = threads == null ? 0 : threads.getThreadAllocatedBytes(thread);
+                long t0 = System.nanoTime();
+                List<Edge> path = engine.route.apply(q);
+                nanos[i] = System.nanoTime() - t0;
+                if (threads != null) alloc += threads.getThreadAllocatedBytes(thread) - a0;
+                if (engine.settled != null) settled += engine.settled.getAsInt();
+
+                arrival[i] = path == null ? Integer.MAX_VALUE : arrival(path, q.source(), q.target(), q.departure().toSecondOfDay());
+                if (path != null) found++;
+                if (reference != null && arrival[i] != reference[i]) {
+                    mismatches++;
+                    if (examples.size() < MAX_EXAMPLES) {
+                        examples.add(String.format("%s -> %s à %s : %s au lieu de %s", q.source().getStopId(),
+                                q.target().getStopId(), q.departure(), format(arrival[i]), format(reference[i])));
+                    }
+                }
+            }
+            if (reference == null) reference = arrival;
+
+            long[] sorted = nanos.clone();
+            Arrays.sort(sorted);
+            double mean = n == 0 ? 0 : Arrays.stream(nanos).sum() / 1e6 / n;
+            stats.add(new Stats(engine.name, n, found, mismatches,
+                    engine.settled == null || n == 0 ? -1 : (double) settled / n,
+                    mean, percentile(sorted, 0.5), percentile(sorted, 0.95),
+                    threads == null || n == 0 ? -1 : (double) alloc / n, examples));
+        }
+        return stats;
+    }
+
+    /**
+     * @param source quai de départ de la requête
+     * @param target quai d'arrivée de la requête
+     * @return heure d'arrivée en secondes depuis minuit du jour de départ, en suivant l'itinéraire
+     */
+    public int arrival(List<Edge> path, Stop source, Stop target, int departureSec) {
+        int time = departureSec;
+        Stop at = source;
+        for (Edge e : path) {
+            time += graph.transferTimeSec(at, e.getFrom());
+            if (e.getTripId() != null) {
+                int sched = e.getDepartureTimeSec();
+                while (sched < time) sched += DAY;
+                time = sched;
+            }
+            time += e.getTravelTimeSec();
+            at = e.getTo();
+        }
+        return time + graph.transferTimeSec(at, target);
+    }
+
+    /**
+     * Affiche un tableau des résultats, puis les exemples de désaccord.
+     */
+    public static void print(List<Stats> stats, PrintStream out) {
+        out.printf("%-16s %7s %7s %8s %10s %9s %9s %9s %11s%n",
+                "Moteur", "Requêtes", "Trouvés", "Écarts", "Fixés/req", "Moy. ms", "Méd. ms", "p95 ms", "Alloué/req");
+        for (Stats s : stats) {
+            out.printf("%-16s %7d %7d %8d %10s %9.3f %9.3f %9.3f %11s%n",
+                    s.engine(), s.queries(), s.found(), s.mismatches(),
+                    s.settled() < 0 ? "-" : String.format("%.0f", s.settled()),
+                    s.meanMs(), s.p50Ms(), s.p95Ms(),
+                    s.allocBytes() < 0 ? "-" : String.format("%.1f Ko", s.allocBytes() / 1024));
+        }
+        for (Stats s : stats) {
+            for (String ex : s.examples()) out.printf("  [%s] %s%n", s.engine(), ex);
+        }
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        if (sorted.length == 0) return 0;
+        return sorted[Math.min(sorted.length - 1, (int) Math.ceil(p * sorted.length) - 1)] / 1e6;
+    }
+
+    private static String format(int sec) {
+        if (sec == Integer.MAX_VALUE) return "aucun";
+        return LocalTime.ofSecondOfDay(Math.floorMod(sec, DAY)) + (sec >= DAY ? " (+" + sec / DAY + " j)" : "");
+    }
+}
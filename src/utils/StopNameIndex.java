@@ -0,0 +1,294 @@
+package utils;
+
+import data.Stop;
+
+import java.text.Normalizer;
+import java.util.*;
+import java.util.function.ToIntFunction;
+import java.util.regex.Pattern;
+
+/**
+ * Index compact des noms d'arrêts pour l'autocomplétion.
+ * <p>
+ * Les noms sont repliés (minuscules, sans accents ni ponctuation) puis chaque
+ * suffixe commençant à un début de mot est rangé dans un tableau trié : une
+ * recherche par préfixe se fait par dichotomie. Un arbre de maxima sur ce
+ * tableau donne les clés de la plage par importance décroissante : la
+ * recherche s'arrête dès {@code k} noms trouvés, même pour un préfixe court.
+ * Si trop peu de résultats sont trouvés, un repli par trigrammes tolère les
+ * fautes de frappe.
+ * <p>
+ * L'index est construit une seule fois et n'est plus modifié ensuite : il peut
+ * être partagé entre plusieurs threads sans synchronisation (les tableaux de
+ * travail du repli par trigrammes sont propres à chaque thread).
+ */
+public final class StopNameIndex {
+    private static final Pattern DIACRITICS = Pattern.compile("\\p{M}+");
+    private static final Pattern NON_ALNUM = Pattern.compile("[^\\p{L}\\p{N}]+");
+    private static final double MIN_TRIGRAM_SCORE = 0.3;
+
+    /**
+     * Suggestion renvoyée par l'index.
+     *
+     * @param name       nom affiché (tel que dans le GTFS)
+     * @param stops      arrêts portant ce nom
+     * @param importance importance cumulée des arrêts
+     */
+    public record Suggestion(String name, List<Stop> stops, int importance) {}
+
+    private final String[] names;        // nom affiché par entrée
+    private final Stop[][] stops;        // arrêts par entrée
+    private final int[] importance;      // importance par entrée
+    private final Map<String, Integer> entryByFolded;
+
+    private final String[] keys;         // suffixes repliés, triés
+    private final int[] keyEntry;        // entrée associée à chaque clé
+    private final int[] keyMax;          // arbre de segments : clé d'importance maximale par intervalle
+
+    private final Map<String, int[]> postings; // trigramme -> entrées
+    private final int[] trigramCount;          // nombre de trigrammes par entrée
+    // tableaux de travail du repli, par thread : trigrammes communs par entrée (remis à 0 après usage), entrées touchées
+    private final ThreadLocal<int[][]> scratch;
+
+    private StopNameIndex(String[] names, Stop[][] stops, int[] importance,
+                          Map<String, Integer> entryByFolded, String[] keys, int[] keyEntry,
+                          Map<String, int[]> postings, int[] trigramCount) {
+        this.names = names;
+        this.stops = stops;
+        this.importance = importance;
+        this.entryByFolded = entryByFolded;
+        this.keys = keys;
+        this.keyEntry = keyEntry;
+        this.keyMax = new int[2 * keys.length];
+        for (int i = 0; i < keys.length; i++) keyMax[keys.length + i] = i;
+        for (int i = keys.length - 1; i > 0; i--) keyMax[i] = heavier(keyMax[2 * i], keyMax[2 * i + 1]);
+        this.postings = postings;
+        this.trigramCount = trigramCount;
+        this.scratch = ThreadLocal.withInitial(() -> new int[2][names.length]);
+    }
+
+    /**
+     * Construit l'index.
+     *
+     * @param allStops   arrêts à indexer
+     * @param importance importance d'un arrêt (par ex. nombre de départs)
+     * @return index immuable
+     */
+    public static StopNameIndex build(Collection<Stop> allStops, ToIntFunction<Stop> importance) {
+        // Regroupement des arrêts par nom replié
+        Map<String, List<Stop>> byFolded = new HashMap<>();
+        for (Stop s : allStops) {
+            String folded = fold(s.getStopName());
+            if (folded.isEmpty()) continue;
+            byFolded.computeIfAbsent(folded, k -> new ArrayList<>()).add(s);
+        }
+
+        int n = byFolded.size();
+        String[] names = new String[n];
+        Stop[][] stops = new Stop[n][];
+        int[] weights = new int[n];
+        String[] folded = new String[n];
+        Map<String, Integer> entryByFolded = new HashMap<>(n * 2);
+        int id = 0;
+        for (Map.Entry<String, List<Stop>> en : byFolded.entrySet()) {
+            List<Stop> list = en.getValue();
+            long w = 0;
+            for (Stop s : list) w += importance.applyAsInt(s);
+            names[id] = list.get(0).getStopName();
+            stops[id] = list.toArray(new Stop[0]);
+            weights[id] = (int) Math.min(Integer.MAX_VALUE, w);
+            folded[id] = en.getKey();
+            entryByFolded.put(en.getKey(), id);
+            id++;
+        }
+
+        // Suffixes à chaque début de mot, triés
+        List<String> keyList = new ArrayList<>();
+        List<Integer> entryList = new ArrayList<>();
+        for (int e = 0; e < n; e++) {
+            String f = folded[e];
+            for (int i = 0; i < f.length(); i++) {
+                if (i == 0 || f.charAt(i - 1) == ' ') {
+                    keyList.add(f.substring(i));
+                    entryList.add(e);
+                }
+            }
+        }
+        Integer[] order = new Integer[keyList.size()];
+        for (int i = 0; i < order.length; i++) order[i] = i;
+        Arrays.sort(order, Comparator.comparing(keyList::get));
+        String[] keys = new String[order.length];
+        int[] keyEntry = new int[order.length];
+        for (int i = 0; i < order.length; i++) {
+            keys[i] = keyList.get(order[i]);
+            keyEntry[i] = entryList.get(order[i]);
+        }
+
+        // Listes inversées des trigrammes
+        Map<String, List<Integer>> tmp = new HashMap<>();
+        int[] trigramCount = new int[n];
+        for (int e = 0; e < n; e++) {
+            Set<String> grams = trigrams(folded[e]);
+            trigramCount[e] = grams.size();
+            for (String g : grams) tmp.computeIfAbsent(g, k -> new ArrayList<>()).add(e);
+        }
+        Map<String, int[]> postings = new HashMap<>(tmp.size() * 2);
+        tmp.forEach((g, l) -> postings.put(g, l.stream().mapToInt(Integer::intValue).toArray()));
+
+        return new StopNameIndex(names, stops, weights, entryByFolded, keys, keyEntry, postings, trigramCount);
+    }
+
+    /**
+     * Replie un nom : minuscules, accents supprimés, ponctuation remplacée par des espaces.
+     *
+     * @param name nom brut
+     * @return nom replié
+     */
+    public static String fold(String name) {
+        String s = Normalizer.normalize(name, Normalizer.Form.NFD);
+        s = DIACRITICS.matcher(s).replaceAll("");
+        s = NON_ALNUM.matcher(s.toLowerCase(Locale.ROOT)).replaceAll(" ");
+        return s.trim();
+    }
+
+    /**
+     * @param name nom saisi (accents et casse ignorés)
+     * @return arrêts portant exactement ce nom, ou liste vide
+     */
+    public List<Stop> exact(String name) {
+        Integer e = entryByFolded.get(fold(name));
+        return e == null ? List.of() : List.of(stops[e]);
+    }
+
+    /**
+     * Renvoie au plus {@code k} suggestions pour la saisie, classées par importance.
+     * Les correspondances par préfixe de mot passent avant les correspondances approchées.
+     *
+     * @param query saisie utilisateur
+     * @param k     nombre maximal de suggestions
+     * @return suggestions
+     */
+    public List<Suggestion> suggest(String query, int k) {
+        String q = fold(query);
+        if (q.isEmpty() || k <= 0) return List.of();
+
+        // 1) préfixe : plage [lo, hi) du tableau trié, parcourue par importance décroissante :
+        // on retire la clé la plus importante d'un intervalle, qui se coupe en deux autour d'elle
+        int lo = lowerBound(q), hi = lowerBound(q + Character.MAX_VALUE);
+        int[] hits = new int[k];
+        int found = 0;
+        int[] rangeLo = new int[2 * k + 1], rangeHi = new int[2 * k + 1], rangeTop = new int[2 * k + 1];
+        int ranges = 0;
+        if (lo < hi) {
+            rangeLo[0] = lo;
+            rangeHi[0] = hi;
+            rangeTop[0] = maxKey(lo, hi);
+            ranges = 1;
+        }
+        while (found < k && ranges > 0) {
+            int r = 0;
+            for (int i = 1; i < ranges; i++) if (heavier(rangeTop[r], rangeTop[i]) != rangeTop[r]) r = i;
+            int a = rangeLo[r], b = rangeHi[r], top = rangeTop[r];
+            ranges--;
+            rangeLo[r] = rangeLo[ranges];
+            rangeHi[r] = rangeHi[ranges];
+            rangeTop[r] = rangeTop[ranges];
+            if (!contains(hits, found, keyEntry[top])) hits[found++] = keyEntry[top];
+            if (ranges + 2 > rangeLo.length) {
+                rangeLo = Arrays.copyOf(rangeLo, 2 * rangeLo.length);
+                rangeHi = Arrays.copyOf(rangeHi, 2 * rangeHi.length);
+                rangeTop = Arrays.copyOf(rangeTop, 2 * rangeTop.length);
+            }
+            if (a < top) {
+                rangeLo[ranges] = a;
+                rangeHi[ranges] = top;
+                rangeTop[ranges++] = maxKey(a, top);
+            }
+            if (top + 1 < b) {
+                rangeLo[ranges] = top + 1;
+                rangeHi[ranges] = b;
+                rangeTop[ranges++] = maxKey(top + 1, b);
+            }
+        }
+
+        List<Suggestion> out = new ArrayList<>(k);
+        for (int i = 0; i < found; i++) out.add(suggestion(hits[i]));
+        if (out.size() >= k) return out;
+
+        // 2) repli approché par trigrammes (coefficient de Dice)
+        Set<String> grams = trigrams(q);
+        int[][] buffers = scratch.get();
+        int[] common = buffers[0];
+        int[] touched = buffers[1];
+        int touchedCount = 0;
+        for (String g : grams) {
+            int[] list = postings.get(g);
+            if (list == null) continue;
+            for (int e : list) {
+                if (common[e]++ == 0) touched[touchedCount++] = e;
+            }
+        }
+        List<int[]> scored = new ArrayList<>();
+        for (int i = 0; i < touchedCount; i++) {
+            int e = touched[i];
+            if (contains(hits, found, e)) continue;
+            double score = 2.0 * common[e] / (grams.size() + trigramCount[e]);
+            if (score >= MIN_TRIGRAM_SCORE) scored.add(new int[]{e, (int) (score * 1000)});
+        }
+        for (int i = 0; i < touchedCount; i++) common[touched[i]] = 0;
+        scored.sort((a, b) -> a[1] != b[1]
+                ? Integer.compare(b[1], a[1])
+                : Integer.compare(importance[b[0]], importance[a[0]]));
+        for (int i = 0; i < scored.size() && out.size() < k; i++) out.add(suggestion(scored.get(i)[0]));
+        return out;
+    }
+
+    /**
+     * @return nombre de noms distincts indexés
+     */
+    public int size() {
+        return names.length;
+    }
+
+    private Suggestion suggestion(int e) {
+        return new Suggestion(names[e], List.of(stops[e]), importance[e]);
+    }
+
+    private int lowerBound(String q) {
+        int lo = 0, hi = keys.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (keys[mid].compareTo(q) < 0) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    //Clé d'importance maximale dans [lo, hi) (arbre de segments)
+    private int maxKey(int lo, int hi) {
+        int best = lo;
+        for (lo += keys.length, hi += keys.length; lo < hi; lo >>= 1, hi >>= 1) {
+            if ((lo & 1) == 1) best = heavier(best, keyMax[lo++]);
+            if ((hi & 1) == 1) best = heavier(best, keyMax[--hi]);
+        }
+        return best;
+    }
+
+    //La plus importante des deux clés, la première du tableau à égalité
+    private int heavier(int a, int b) {
+        int wa = importance[keyEntry[a]], wb = importance[keyEntry[b]];
+        return wa > wb || (wa == wb && a < b) ? a : b;
+    }
+
+    private static boolean contains(int[] values, int count, int v) {
+        for (int i = 0; i < count; i++) if (values[i] == v) return true;
+        return false;
+    }
+
+    private static Set<String> trigrams(String folded) {
+        String padded = "  " + folded + " ";
+        Set<String> grams = new HashSet<>();
+        for (int i = 0; i + 3 <= padded.length(); i++) grams.add(padded.substring(i, i + 3));
+        return grams;
+    }
+}